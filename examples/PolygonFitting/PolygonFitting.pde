@@ -21,17 +21,7 @@ void setup() {
   SimpleContourList contours = gray.thresholdOtsu(false).erode8(1).contour().getContours();
 
   // filter contours which are too small
-  List<SimpleContour> list = contours.getList();
-  List<SimpleContour> prunedList = new ArrayList<SimpleContour>();
-
-  for ( SimpleContour c : list ) {
-    if ( c.getContour().external.size() >= 200 ) {
-      prunedList.add( c );
-    }
-  }
-
-  // create a new contour list
-  contours = new SimpleContourList(prunedList, input.width, input.height);
+  contours = contours.filter(200, 0);
 
   // Fit polygons to external contours
   polygons = contours.fitPolygons(true, 20, 0.25);
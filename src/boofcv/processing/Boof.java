@@ -31,11 +31,13 @@ import boofcv.alg.filter.derivative.GImageDerivativeOps;
 import boofcv.alg.flow.ConfigBroxWarping;
 import boofcv.alg.tracker.klt.ConfigPKlt;
 import boofcv.alg.tracker.sfot.SfotConfig;
+import boofcv.concurrency.BoofConcurrency;
 import boofcv.factory.background.ConfigBackgroundBasic;
 import boofcv.factory.background.ConfigBackgroundGmm;
 import boofcv.factory.feature.associate.ConfigAssociateGreedy;
 import boofcv.factory.feature.associate.FactoryAssociation;
 import boofcv.factory.feature.detdesc.FactoryDetectDescribe;
+import boofcv.factory.feature.detect.line.*;
 import boofcv.factory.feature.detect.template.FactoryTemplateMatching;
 import boofcv.factory.feature.detect.template.TemplateScoreType;
 import boofcv.factory.fiducial.ConfigFiducialBinary;
@@ -67,6 +69,50 @@ import processing.core.PImage;
  */
 public class Boof {
 
+	// Pool which images created by the library are taken from
+	static final ImagePool pool = new ImagePool();
+
+	/**
+	 * Returns the image pool used by the library.  By default it is disabled.
+	 *
+	 * @see ImagePool#setEnabled(boolean)
+	 */
+	public static ImagePool getImagePool() {
+		return pool;
+	}
+
+	/**
+	 * Recycles all images which were created by the library in this frame, if the image pool is enabled.
+	 * Call at the end of draw().
+	 */
+	public static void endFrame() {
+		pool.endFrame();
+	}
+
+	/**
+	 * Turns multi-threaded processing on or off globally.  This affects image conversion in
+	 * {@link ConvertProcessing} as well as all BoofCV algorithms which have a concurrent implementation.
+	 *
+	 * @param concurrent true to use multiple threads or false for single threaded
+	 */
+	public static void setConcurrent( boolean concurrent ) {
+		BoofConcurrency.USE_CONCURRENT = concurrent;
+	}
+
+	/**
+	 * Returns true if multi-threaded processing is turned on
+	 */
+	public static boolean isConcurrent() {
+		return BoofConcurrency.USE_CONCURRENT;
+	}
+
+	/**
+	 * Specifies the maximum number of threads used when concurrency is turned on
+	 */
+	public static void setMaxThreads( int threads ) {
+		BoofConcurrency.setMaxThreads(threads);
+	}
+
 	/**
 	 * Convert PImage into a {@link SimpleGray} of the specified data type
 	 * @param image Original input image.
@@ -75,7 +121,7 @@ public class Boof {
 	 */
 	public static SimpleGray gray(PImage image, ImageDataType type) {
 		if (type == ImageDataType.F32) {
-			GrayF32 out = new GrayF32(image.width, image.height);
+			GrayF32 out = pool.newImage(ImageType.single(GrayF32.class), image.width, image.height);
 
 			switch (image.format) {
 				case PConstants.RGB:
@@ -89,7 +135,7 @@ public class Boof {
 
 			return new SimpleGray(out);
 		} else if (type == ImageDataType.U8) {
-			GrayU8 out = new GrayU8(image.width, image.height);
+			GrayU8 out = pool.newImage(ImageType.single(GrayU8.class), image.width, image.height);
 
 			switch (image.format) {
 				case PConstants.RGB:
@@ -115,8 +161,7 @@ public class Boof {
 	 */
 	public static SimpleColor colorMS(PImage image, ImageDataType type) {
 		if (type == ImageDataType.F32) {
-			Planar<GrayF32> out =
-					new Planar<GrayF32>(GrayF32.class, image.width, image.height, 3);
+			Planar<GrayF32> out = pool.newImage(ImageType.pl(3, GrayF32.class), image.width, image.height);
 
 			switch (image.format) {
 				case PConstants.RGB:
@@ -130,8 +175,7 @@ public class Boof {
 
 			return new SimpleColor(out);
 		} else if (type == ImageDataType.U8) {
-			Planar<GrayU8> out =
-					new Planar<GrayU8>(GrayU8.class, image.width, image.height, 3);
+			Planar<GrayU8> out = pool.newImage(ImageType.pl(3, GrayU8.class), image.width, image.height);
 
 			switch (image.format) {
 				case PConstants.RGB:
@@ -149,6 +193,24 @@ public class Boof {
 		}
 	}
 
+	/**
+	 * Creates a {@link SimpleARGB} which is a view into the PImage's pixels.  Unlike {@link #gray} the image
+	 * is not copied.
+	 *
+	 * @param image Original input image.  RGB or ARGB
+	 * @return View of the image
+	 */
+	public static SimpleARGB argb(PImage image) {
+		switch (image.format) {
+			case PConstants.RGB:
+			case PConstants.ARGB:
+				return new SimpleARGB(image);
+
+			default:
+				throw new RuntimeException("Unsupported image type");
+		}
+	}
+
 	/**
 	 * Creates a KLT point tracker
 	 *
@@ -168,7 +230,9 @@ public class Boof {
 
 		PointTracker tracker = FactoryPointTracker.klt(config, configDetect, inputType, derivType);
 
-		return new SimpleTrackerPoints(tracker, inputType);
+		SimpleTrackerPoints ret = new SimpleTrackerPoints(tracker, inputType);
+		ret.configDetect = configDetect;
+		return ret;
 	}
 
 	public static SimpleTrackerObject trackerTld(ConfigTrackerTld config, ImageDataType imageType) {
@@ -275,6 +339,75 @@ public class Boof {
 		return new SimpleAssociateDescription(assoc);
 	}
 
+	/**
+	 * Creates a line detector which uses a Hough polar transform.  The detector can be reused across images.
+	 *
+	 * @param configHough Configuration for the Hough detector.  If null defaults will be used.
+	 * @param configPolar Configuration for the polar parameter space.  If null defaults will be used.
+	 * @param imageType Image type which is processed.  F32 or U8
+	 */
+	public static SimpleLineDetector linesHoughPolar( ConfigHoughGradient configHough ,
+													  ConfigParamPolar configPolar ,
+													  ImageDataType imageType ) {
+		Class inputType = ImageDataType.typeToSingleClass(imageType);
+		return new SimpleLineDetector(FactoryDetectLine.houghLinePolar(configHough,configPolar,inputType));
+	}
+
+	/**
+	 * Creates a line detector which uses a Hough foot of norm transform.  The detector can be reused across images.
+	 *
+	 * @param configHough Configuration for the Hough detector.  If null defaults will be used.
+	 * @param configFoot Configuration for the foot of norm parameter space.  If null defaults will be used.
+	 * @param imageType Image type which is processed.  F32 or U8
+	 */
+	public static SimpleLineDetector linesHoughFoot( ConfigHoughGradient configHough ,
+													 ConfigParamFoot configFoot ,
+													 ImageDataType imageType ) {
+		Class inputType = ImageDataType.typeToSingleClass(imageType);
+		return new SimpleLineDetector(FactoryDetectLine.houghLineFoot(configHough,configFoot,inputType));
+	}
+
+	/**
+	 * Creates a line detector which uses a Hough foot of norm transform on sub-images.  The detector can be
+	 * reused across images.
+	 *
+	 * @param config Configuration for the detector.  If null defaults will be used.
+	 * @param imageType Image type which is processed.  F32 or U8
+	 */
+	public static SimpleLineDetector linesHoughFootSub( ConfigHoughFootSubimage config , ImageDataType imageType ) {
+		Class inputType = ImageDataType.typeToSingleClass(imageType);
+		return new SimpleLineDetector(FactoryDetectLine.houghLineFootSub(config,inputType));
+	}
+
+	/**
+	 * Creates a global threshold which can be reused across images.
+	 *
+	 * @param type Which global threshold. GLOBAL_OTSU, GLOBAL_ENTROPY, GLOBAL_LI, or GLOBAL_HUANG
+	 * @param down true for selecting pixels which are less than or equal to the threshold
+	 */
+	public static SimpleThresholdGlobal thresholdGlobal( ThresholdType type , boolean down ) {
+		return new SimpleThresholdGlobal(type,down);
+	}
+
+	/**
+	 * Creates binary morphology which can be reused across images and efficiently handles operations which
+	 * are applied many times.
+	 */
+	public static SimpleMorphology morphology() {
+		return new SimpleMorphology();
+	}
+
+	/**
+	 * Creates a tool for removing perspective distortion which caches the homography and a lookup table.
+	 * Much faster than {@link SimpleGray#removePerspective} when applied to a sequence of images.
+	 *
+	 * @param outWidth Width of output image
+	 * @param outHeight Height of output image
+	 */
+	public static RemovePerspective removePerspective( int outWidth , int outHeight ) {
+		return new RemovePerspective(outWidth,outHeight);
+	}
+
 	/**
 	 * Creates a square-binary fiducial detector which is light invariant.
 	 *
@@ -18,19 +18,28 @@
 
 package boofcv.processing;
 
+import boofcv.concurrency.BoofConcurrency;
 import boofcv.struct.image.GrayF32;
 import boofcv.struct.image.GrayU8;
 import boofcv.struct.image.ImageBase;
 import boofcv.struct.image.Planar;
+import processing.core.PConstants;
 import processing.core.PImage;
 
 /**
- * Functions for converting between BoofCV and Processing image data types
+ * Functions for converting between BoofCV and Processing image data types.  When concurrency is turned on
+ * in {@link Boof#setConcurrent(boolean)} images are split into bands of rows which are converted in parallel.
  *
  * @author Peter Abeles
  */
 public class ConvertProcessing {
 
+	/**
+	 * Images with fewer pixels than this are always converted using a single thread since the overhead
+	 * of launching threads would exceed the savings.
+	 */
+	public static int minimumConcurrentPixels = 320*240;
+
 	public static void convertFromRGB( PImage input , ImageBase output ) {
 		if( output instanceof GrayU8 ) {
 			convert_RGB_U8(input,(GrayU8)output);
@@ -49,8 +58,16 @@ public class ConvertProcessing {
 	public static void convert_RGB_F32( PImage input , GrayF32 output ) {
 		output.reshape(input.width,input.height);
 
-		int indexInput = 0;
-		for( int y = 0; y < input.height; y++ ) {
+		if( isConcurrent(input.width,input.height) ) {
+			BoofConcurrency.loopBlocks(0,input.height,(y0,y1)->convert_RGB_F32(input,output,y0,y1));
+		} else {
+			convert_RGB_F32(input,output,0,input.height);
+		}
+	}
+
+	static void convert_RGB_F32( PImage input , GrayF32 output , int y0 , int y1 ) {
+		for( int y = y0; y < y1; y++ ) {
+			int indexInput = y*input.width;
 			int indexOut = output.startIndex + y*output.stride;
 			for( int x = 0; x < input.width; x++ ,indexInput++,indexOut++) {
 				int value = input.pixels[indexInput];
@@ -67,8 +84,16 @@ public class ConvertProcessing {
 	public static void convert_RGB_U8( PImage input , GrayU8 output ) {
 		output.reshape(input.width,input.height);
 
-		int indexInput = 0;
-		for( int y = 0; y < input.height; y++ ) {
+		if( isConcurrent(input.width,input.height) ) {
+			BoofConcurrency.loopBlocks(0,input.height,(y0,y1)->convert_RGB_U8(input,output,y0,y1));
+		} else {
+			convert_RGB_U8(input,output,0,input.height);
+		}
+	}
+
+	static void convert_RGB_U8( PImage input , GrayU8 output , int y0 , int y1 ) {
+		for( int y = y0; y < y1; y++ ) {
+			int indexInput = y*input.width;
 			int indexOut = output.startIndex + y*output.stride;
 			for( int x = 0; x < input.width; x++ ,indexInput++,indexOut++) {
 				int value = input.pixels[indexInput];
@@ -83,9 +108,16 @@ public class ConvertProcessing {
 	}
 
 	public static void convert_F32_RGB( GrayF32 input , PImage output ) {
+		if( isConcurrent(input.width,input.height) ) {
+			BoofConcurrency.loopBlocks(0,input.height,(y0,y1)->convert_F32_RGB(input,output,y0,y1));
+		} else {
+			convert_F32_RGB(input,output,0,input.height);
+		}
+	}
 
-		int indexOutput = 0;
-		for( int y = 0; y < input.height; y++ ) {
+	static void convert_F32_RGB( GrayF32 input , PImage output , int y0 , int y1 ) {
+		for( int y = y0; y < y1; y++ ) {
+			int indexOutput = y*input.width;
 			int indexInput = input.startIndex + y*input.stride;
 			for( int x = 0; x < input.width; x++ ,indexOutput++,indexInput++) {
 				int value = (int)input.data[indexInput];
@@ -96,9 +128,16 @@ public class ConvertProcessing {
 	}
 
 	public static void convert_U8_RGB( GrayU8 input , PImage output ) {
+		if( isConcurrent(input.width,input.height) ) {
+			BoofConcurrency.loopBlocks(0,input.height,(y0,y1)->convert_U8_RGB(input,output,y0,y1));
+		} else {
+			convert_U8_RGB(input,output,0,input.height);
+		}
+	}
 
-		int indexOutput = 0;
-		for( int y = 0; y < input.height; y++ ) {
+	static void convert_U8_RGB( GrayU8 input , PImage output , int y0 , int y1 ) {
+		for( int y = y0; y < y1; y++ ) {
+			int indexOutput = y*input.width;
 			int indexInput = input.startIndex + y*input.stride;
 			for( int x = 0; x < input.width; x++ ,indexOutput++,indexInput++) {
 				int value = input.data[indexInput]&0xFF;
@@ -109,13 +148,21 @@ public class ConvertProcessing {
 	}
 
 	public static void convert_PF32_RGB(Planar<GrayF32> input , PImage output ) {
+		if( isConcurrent(input.width,input.height) ) {
+			BoofConcurrency.loopBlocks(0,input.height,(y0,y1)->convert_PF32_RGB(input,output,y0,y1));
+		} else {
+			convert_PF32_RGB(input,output,0,input.height);
+		}
+	}
+
+	static void convert_PF32_RGB(Planar<GrayF32> input , PImage output , int y0 , int y1 ) {
 
 		GrayF32 red = input.getBand(0);
 		GrayF32 green = input.getBand(1);
 		GrayF32 blue = input.getBand(2);
 
-		int indexOutput = 0;
-		for( int y = 0; y < input.height; y++ ) {
+		for( int y = y0; y < y1; y++ ) {
+			int indexOutput = y*input.width;
 			int indexInput = input.startIndex + y*input.stride;
 			for( int x = 0; x < input.width; x++ ,indexOutput++,indexInput++) {
 				int r = (int)red.data[indexInput];
@@ -128,13 +175,21 @@ public class ConvertProcessing {
 	}
 
 	public static void convert_PU8_RGB(Planar<GrayU8> input , PImage output ) {
+		if( isConcurrent(input.width,input.height) ) {
+			BoofConcurrency.loopBlocks(0,input.height,(y0,y1)->convert_PU8_RGB(input,output,y0,y1));
+		} else {
+			convert_PU8_RGB(input,output,0,input.height);
+		}
+	}
+
+	static void convert_PU8_RGB(Planar<GrayU8> input , PImage output , int y0 , int y1 ) {
 
 		GrayU8 red = input.getBand(0);
 		GrayU8 green = input.getBand(1);
 		GrayU8 blue = input.getBand(2);
 
-		int indexOutput = 0;
-		for( int y = 0; y < input.height; y++ ) {
+		for( int y = y0; y < y1; y++ ) {
+			int indexOutput = y*input.width;
 			int indexInput = input.startIndex + y*input.stride;
 			for( int x = 0; x < input.width; x++ ,indexOutput++,indexInput++) {
 				int r = (red.data[indexInput]&0xFF);
@@ -149,12 +204,21 @@ public class ConvertProcessing {
 	public static void convert_RGB_PF32(PImage input , Planar<GrayF32> output ) {
 		output.reshape(input.width,input.height);
 
+		if( isConcurrent(input.width,input.height) ) {
+			BoofConcurrency.loopBlocks(0,input.height,(y0,y1)->convert_RGB_PF32(input,output,y0,y1));
+		} else {
+			convert_RGB_PF32(input,output,0,input.height);
+		}
+	}
+
+	static void convert_RGB_PF32(PImage input , Planar<GrayF32> output , int y0 , int y1 ) {
+
 		GrayF32 red = output.getBand(0);
 		GrayF32 green = output.getBand(1);
 		GrayF32 blue = output.getBand(2);
 
-		int indexInput = 0;
-		for( int y = 0; y < input.height; y++ ) {
+		for( int y = y0; y < y1; y++ ) {
+			int indexInput = y*input.width;
 			int indexOutput = output.startIndex + y*output.stride;
 			for( int x = 0; x < input.width; x++ ,indexOutput++,indexInput++) {
 				int value = input.pixels[indexInput];
@@ -169,12 +233,21 @@ public class ConvertProcessing {
 	public static void convert_RGB_PU8(PImage input , Planar<GrayU8> output ) {
 		output.reshape(input.width,input.height);
 
+		if( isConcurrent(input.width,input.height) ) {
+			BoofConcurrency.loopBlocks(0,input.height,(y0,y1)->convert_RGB_PU8(input,output,y0,y1));
+		} else {
+			convert_RGB_PU8(input,output,0,input.height);
+		}
+	}
+
+	static void convert_RGB_PU8(PImage input , Planar<GrayU8> output , int y0 , int y1 ) {
+
 		GrayU8 red = output.getBand(0);
 		GrayU8 green = output.getBand(1);
 		GrayU8 blue = output.getBand(2);
 
-		int indexInput = 0;
-		for( int y = 0; y < input.height; y++ ) {
+		for( int y = y0; y < y1; y++ ) {
+			int indexInput = y*input.width;
 			int indexOutput = output.startIndex + y*output.stride;
 			for( int x = 0; x < input.width; x++ ,indexOutput++,indexInput++) {
 				int value = input.pixels[indexInput];
@@ -185,4 +258,21 @@ public class ConvertProcessing {
 			}
 		}
 	}
+
+	/**
+	 * Changes the shape of a PImage to the specified size.  The pixel array is only reallocated
+	 * if the shape has changed.
+	 */
+	public static void reshape( PImage image , int width , int height ) {
+		if( image.width == width && image.height == height && image.pixels != null )
+			return;
+		image.init(width,height,image.format == 0 ? PConstants.RGB : image.format);
+	}
+
+	/**
+	 * Returns true if an image of the specified size should be processed using multiple threads
+	 */
+	static boolean isConcurrent( int width , int height ) {
+		return BoofConcurrency.USE_CONCURRENT && width*height >= minimumConcurrentPixels;
+	}
 }
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2011-2020, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.processing;
+
+import boofcv.struct.image.ImageBase;
+import boofcv.struct.image.ImageDataType;
+import boofcv.struct.image.ImageType;
+import processing.core.PConstants;
+import processing.core.PImage;
+
+import java.util.*;
+
+/**
+ * Pool of images which are recycled instead of being discarded.  Images are looked up by their type and shape.
+ * They can be explicitly acquired and released or handed out for the duration of a single frame. Frame
+ * images are all released together when {@link #endFrame()} is called, typically at the end of Processing's
+ * draw() function.
+ *
+ * When enabled, all the Simple* classes and {@link Boof} create their images using the frame scope of
+ * {@link Boof#getImagePool()}. Images from a previous frame must not be used after {@link #endFrame()} has
+ * been called.
+ *
+ * @author Peter Abeles
+ */
+public class ImagePool {
+	// If false then images are always created and the pool isn't used by the library
+	boolean enabled = false;
+
+	// images which are not being used, keyed by type and shape
+	Map<Key,ArrayDeque<ImageBase>> images = new HashMap<>();
+	Map<Key,ArrayDeque<PImage>> pimages = new HashMap<>();
+
+	// images handed out in the current frame
+	List<ImageBase> frameImages = new ArrayList<>();
+	List<PImage> framePImages = new ArrayList<>();
+
+	// every image which is inside the pool. Used to ignore images which are released twice
+	Set<Object> pooled = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	// lookup key which is reused to avoid creating a new one on each request
+	Key lookup = new Key();
+
+	long hits;
+	long misses;
+	long bytesHeld;
+
+	/**
+	 * Returns an image of the specified type and shape.  If one is available in the pool it's reused, otherwise
+	 * a new one is created. Pixel values are undefined.
+	 */
+	public synchronized <T extends ImageBase<T>> T acquire( ImageType<T> type , int width , int height ) {
+		ArrayDeque<ImageBase> queue = images.get(lookup.set(type,width,height));
+		if( queue != null && !queue.isEmpty() ) {
+			hits++;
+			T image = (T)queue.pop();
+			pooled.remove(image);
+			bytesHeld -= sizeOf(image);
+			return image;
+		}
+		misses++;
+		return type.createImage(width,height);
+	}
+
+	/**
+	 * Returns an image to the pool so that it can be used again.  Images which are already in the pool are
+	 * ignored.  If the image was acquired for the current frame it won't be released again by {@link #endFrame()}.
+	 */
+	public synchronized void release( ImageBase image ) {
+		removeIdentity(frameImages,image);
+		releaseImage(image);
+	}
+
+	private void releaseImage( ImageBase image ) {
+		if( !pooled.add(image) )
+			return;
+		ArrayDeque<ImageBase> queue = images.get(lookup.set(image.getImageType(),image.width,image.height));
+		if( queue == null ) {
+			queue = new ArrayDeque<>();
+			images.put(new Key().set(image.getImageType(),image.width,image.height),queue);
+		}
+		queue.push(image);
+		bytesHeld += sizeOf(image);
+	}
+
+	/**
+	 * Returns an RGB PImage of the specified shape. Pixel values are undefined.
+	 */
+	public synchronized PImage acquirePImage( int width , int height ) {
+		ArrayDeque<PImage> queue = pimages.get(lookup.set(null,width,height));
+		if( queue != null && !queue.isEmpty() ) {
+			hits++;
+			PImage image = queue.pop();
+			pooled.remove(image);
+			image.format = PConstants.RGB;
+			bytesHeld -= 4L*width*height;
+			return image;
+		}
+		misses++;
+		return new PImage(width,height, PConstants.RGB);
+	}
+
+	/**
+	 * Returns a PImage to the pool so that it can be used again.  Images which are already in the pool are
+	 * ignored.  If the image was acquired for the current frame it won't be released again by {@link #endFrame()}.
+	 */
+	public synchronized void release( PImage image ) {
+		removeIdentity(framePImages,image);
+		releasePImage(image);
+	}
+
+	private void releasePImage( PImage image ) {
+		if( !pooled.add(image) )
+			return;
+		ArrayDeque<PImage> queue = pimages.get(lookup.set(null,image.width,image.height));
+		if( queue == null ) {
+			queue = new ArrayDeque<>();
+			pimages.put(new Key().set(null,image.width,image.height),queue);
+		}
+		queue.push(image);
+		bytesHeld += 4L*image.width*image.height;
+	}
+
+	/**
+	 * Same as {@link #acquire} but the image is automatically released when {@link #endFrame()} is called.
+	 */
+	public synchronized <T extends ImageBase<T>> T acquireFrame( ImageType<T> type , int width , int height ) {
+		T image = acquire(type,width,height);
+		frameImages.add(image);
+		return image;
+	}
+
+	/**
+	 * Same as {@link #acquirePImage} but the image is automatically released when {@link #endFrame()} is called.
+	 */
+	public synchronized PImage acquireFramePImage( int width , int height ) {
+		PImage image = acquirePImage(width,height);
+		framePImages.add(image);
+		return image;
+	}
+
+	/**
+	 * Releases all the images which were acquired in the current frame
+	 */
+	public synchronized void endFrame() {
+		for (int i = 0; i < frameImages.size(); i++) {
+			releaseImage(frameImages.get(i));
+		}
+		for (int i = 0; i < framePImages.size(); i++) {
+			releasePImage(framePImages.get(i));
+		}
+		frameImages.clear();
+		framePImages.clear();
+	}
+
+	/**
+	 * Discards all images which are in the pool and resets the counters
+	 */
+	public synchronized void clear() {
+		images.clear();
+		pimages.clear();
+		frameImages.clear();
+		framePImages.clear();
+		pooled.clear();
+		hits = misses = bytesHeld = 0;
+	}
+
+	/**
+	 * Creates a new image for use inside the library.  If the pool is enabled the image comes from the current
+	 * frame and its pixel values are undefined, so the caller must write to every pixel.
+	 */
+	<T extends ImageBase<T>> T newImage( ImageType<T> type , int width , int height ) {
+		if( !enabled )
+			return type.createImage(width,height);
+		return acquireFrame(type,width,height);
+	}
+
+	/**
+	 * Creates a new RGB PImage for use inside the library.  If the pool is enabled the image comes from the
+	 * current frame and its pixel values are undefined, so the caller must write to every pixel.
+	 */
+	PImage newPImage( int width , int height ) {
+		if( !enabled )
+			return new PImage(width,height, PConstants.RGB);
+		return acquireFramePImage(width,height);
+	}
+
+	private static void removeIdentity( List<?> list , Object image ) {
+		for (int i = list.size()-1; i >= 0; i--) {
+			if( list.get(i) == image ) {
+				list.remove(i);
+				return;
+			}
+		}
+	}
+
+	static long sizeOf( ImageBase image ) {
+		ImageType type = image.getImageType();
+		return (long)image.width*image.height*type.getNumBands()*type.getDataType().getNumBits()/8;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * If enabled then images created by the library are taken from the frame scope of this pool
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Number of requests which were satisfied by an image in the pool
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Number of requests which required a new image to be created
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Number of bytes of image data which are sitting in the pool waiting to be reused
+	 */
+	public long getBytesHeld() {
+		return bytesHeld;
+	}
+
+	/**
+	 * Image type and shape.  Type is null for a PImage.
+	 */
+	static class Key {
+		ImageType.Family family;
+		ImageDataType dataType;
+		int numBands;
+		int width, height;
+
+		Key set( ImageType type , int width , int height ) {
+			this.family = type == null ? null : type.getFamily();
+			this.dataType = type == null ? null : type.getDataType();
+			this.numBands = type == null ? 0 : type.getNumBands();
+			this.width = width;
+			this.height = height;
+			return this;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if( !(o instanceof Key) )
+				return false;
+			Key k = (Key)o;
+			return family == k.family && dataType == k.dataType && numBands == k.numBands &&
+					width == k.width && height == k.height;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = family == null ? 0 : family.hashCode();
+			result = 31*result + (dataType == null ? 0 : dataType.hashCode());
+			result = 31*result + numBands;
+			result = 31*result + width;
+			return 31*result + height;
+		}
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2011-2020, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.processing;
+
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.struct.image.GrayF32;
+import boofcv.struct.image.GrayS32;
+import boofcv.struct.image.GrayU8;
+
+/**
+ * Image processing functions which operate directly on packed ARGB pixels, i.e. the format used by
+ * {@link processing.core.PImage#pixels}.  The packed image is stored inside a {@link GrayS32} where each
+ * element is one pixel.  Gray scale values are computed on the fly as the average of the red, green, and
+ * blue channels, same as {@link ConvertProcessing}.
+ *
+ * @author Peter Abeles
+ */
+public class PackedProcessing {
+
+	public static void gray( GrayS32 input , GrayU8 output ) {
+		output.reshape(input.width,input.height);
+
+		if( ConvertProcessing.isConcurrent(input.width,input.height) ) {
+			BoofConcurrency.loopBlocks(0,input.height,(y0,y1)->gray(input,output,y0,y1));
+		} else {
+			gray(input,output,0,input.height);
+		}
+	}
+
+	static void gray( GrayS32 input , GrayU8 output , int y0 , int y1 ) {
+		for( int y = y0; y < y1; y++ ) {
+			int indexIn = input.startIndex + y*input.stride;
+			int indexOut = output.startIndex + y*output.stride;
+			for( int x = 0; x < input.width; x++, indexIn++, indexOut++ ) {
+				output.data[indexOut] = (byte)gray(input.data[indexIn]);
+			}
+		}
+	}
+
+	public static void gray( GrayS32 input , GrayF32 output ) {
+		output.reshape(input.width,input.height);
+
+		if( ConvertProcessing.isConcurrent(input.width,input.height) ) {
+			BoofConcurrency.loopBlocks(0,input.height,(y0,y1)->gray(input,output,y0,y1));
+		} else {
+			gray(input,output,0,input.height);
+		}
+	}
+
+	static void gray( GrayS32 input , GrayF32 output , int y0 , int y1 ) {
+		for( int y = y0; y < y1; y++ ) {
+			int indexIn = input.startIndex + y*input.stride;
+			int indexOut = output.startIndex + y*output.stride;
+			for( int x = 0; x < input.width; x++, indexIn++, indexOut++ ) {
+				int value = input.data[indexIn];
+				output.data[indexOut] = (((value>>16)&0xFF) + ((value>>8)&0xFF) + (value&0xFF))/3.0f;
+			}
+		}
+	}
+
+	/**
+	 * Thresholds the gray scale value of each pixel without creating a gray scale image.
+	 *
+	 * @see boofcv.alg.filter.binary.GThresholdImageOps#threshold
+	 *
+	 * @param input Packed ARGB image
+	 * @param threshold Threshold value
+	 * @param down If true then pixels with values &le; threshold are set to 1, otherwise values &gt; threshold
+	 * @param output Binary output image.  Reshaped to match the input.
+	 */
+	public static void threshold( GrayS32 input , double threshold , boolean down , GrayU8 output ) {
+		output.reshape(input.width,input.height);
+
+		if( ConvertProcessing.isConcurrent(input.width,input.height) ) {
+			BoofConcurrency.loopBlocks(0,input.height,(y0,y1)->threshold(input,threshold,down,output,y0,y1));
+		} else {
+			threshold(input,threshold,down,output,0,input.height);
+		}
+	}
+
+	static void threshold( GrayS32 input , double threshold , boolean down , GrayU8 output , int y0 , int y1 ) {
+		for( int y = y0; y < y1; y++ ) {
+			int indexIn = input.startIndex + y*input.stride;
+			int indexOut = output.startIndex + y*output.stride;
+			if( down ) {
+				for( int x = 0; x < input.width; x++, indexIn++, indexOut++ ) {
+					output.data[indexOut] = (byte)(gray(input.data[indexIn]) <= threshold ? 1 : 0);
+				}
+			} else {
+				for( int x = 0; x < input.width; x++, indexIn++, indexOut++ ) {
+					output.data[indexOut] = (byte)(gray(input.data[indexIn]) > threshold ? 1 : 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Applies a mean blur to each color channel independently.  Pixels along the image border are the
+	 * average of the pixels inside the image.  Output pixels are fully opaque.
+	 *
+	 * @param input Packed ARGB image
+	 * @param radius Radius of the square region
+	 * @param output Packed ARGB output.  Reshaped to match the input.  Can't be the same as input.
+	 * @param work Storage for the horizontal pass.  Reshaped to match the input.
+	 */
+	public static void blurMean( GrayS32 input , int radius , GrayS32 output , GrayS32 work ) {
+		output.reshape(input.width,input.height);
+		work.reshape(input.width,input.height);
+
+		if( ConvertProcessing.isConcurrent(input.width,input.height) ) {
+			BoofConcurrency.loopBlocks(0,input.height,(y0,y1)->blurMeanHorizontal(input,radius,work,y0,y1));
+			BoofConcurrency.loopBlocks(0,input.height,(y0,y1)->blurMeanVertical(work,radius,output,y0,y1));
+		} else {
+			blurMeanHorizontal(input,radius,work,0,input.height);
+			blurMeanVertical(work,radius,output,0,input.height);
+		}
+	}
+
+	static void blurMeanHorizontal( GrayS32 input , int radius , GrayS32 output , int y0 , int y1 ) {
+		final int width = input.width;
+
+		for( int y = y0; y < y1; y++ ) {
+			int rowIn = input.startIndex + y*input.stride;
+			int indexOut = output.startIndex + y*output.stride;
+
+			int sumR = 0, sumG = 0, sumB = 0, count = 0;
+			for( int x = 0; x < radius && x < width; x++ ) {
+				int value = input.data[rowIn+x];
+				sumR += (value>>16)&0xFF; sumG += (value>>8)&0xFF; sumB += value&0xFF;
+				count++;
+			}
+
+			for( int x = 0; x < width; x++, indexOut++ ) {
+				int xAdd = x + radius;
+				if( xAdd < width ) {
+					int value = input.data[rowIn+xAdd];
+					sumR += (value>>16)&0xFF; sumG += (value>>8)&0xFF; sumB += value&0xFF;
+					count++;
+				}
+				int xRemove = x - radius - 1;
+				if( xRemove >= 0 ) {
+					int value = input.data[rowIn+xRemove];
+					sumR -= (value>>16)&0xFF; sumG -= (value>>8)&0xFF; sumB -= value&0xFF;
+					count--;
+				}
+
+				output.data[indexOut] = pack(sumR/count,sumG/count,sumB/count);
+			}
+		}
+	}
+
+	static void blurMeanVertical( GrayS32 input , int radius , GrayS32 output , int y0 , int y1 ) {
+		final int width = input.width;
+		final int height = input.height;
+
+		int[] sumR = new int[width];
+		int[] sumG = new int[width];
+		int[] sumB = new int[width];
+
+		// initialize the sums with the window of the row before this block, since the first iteration removes
+		// the top row of that window
+		int count = 0;
+		for( int y = Math.max(0,y0-radius-1); y < Math.min(height,y0+radius); y++ ) {
+			addRow(input,y,sumR,sumG,sumB,1);
+			count++;
+		}
+
+		for( int y = y0; y < y1; y++ ) {
+			int yAdd = y + radius;
+			if( yAdd < height ) {
+				addRow(input,yAdd,sumR,sumG,sumB,1);
+				count++;
+			}
+			int yRemove = y - radius - 1;
+			if( yRemove >= 0 ) {
+				addRow(input,yRemove,sumR,sumG,sumB,-1);
+				count--;
+			}
+
+			int indexOut = output.startIndex + y*output.stride;
+			for( int x = 0; x < width; x++, indexOut++ ) {
+				output.data[indexOut] = pack(sumR[x]/count,sumG[x]/count,sumB[x]/count);
+			}
+		}
+	}
+
+	private static void addRow( GrayS32 input , int y , int[] sumR , int[] sumG , int[] sumB , int sign ) {
+		int indexIn = input.startIndex + y*input.stride;
+		for( int x = 0; x < input.width; x++, indexIn++ ) {
+			int value = input.data[indexIn];
+			sumR[x] += sign*((value>>16)&0xFF);
+			sumG[x] += sign*((value>>8)&0xFF);
+			sumB[x] += sign*(value&0xFF);
+		}
+	}
+
+	/**
+	 * Gray scale value of a packed pixel
+	 */
+	public static int gray( int argb ) {
+		return (((argb>>16)&0xFF) + ((argb>>8)&0xFF) + (argb&0xFF))/3;
+	}
+
+	/**
+	 * Packs the color channels into an opaque pixel
+	 */
+	public static int pack( int r , int g , int b ) {
+		return 0xFF << 24 | r << 16 | g << 8 | b;
+	}
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) 2011-2020, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.processing;
+
+import boofcv.abst.geo.Estimate1ofEpipolar;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.factory.geo.FactoryMultiView;
+import boofcv.struct.geo.AssociatedPair;
+import boofcv.struct.image.GrayF32;
+import boofcv.struct.image.GrayU8;
+import boofcv.struct.image.ImageGray;
+import boofcv.struct.image.Planar;
+import org.ejml.data.DMatrixRMaj;
+import processing.core.PImage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Removes perspective distortion from a quadrilateral region and renders it as a rectangular image.  Intended
+ * for a sequence of images where the corners rarely change, e.g. a fixed camera.  The homography is only
+ * estimated when the corners change and the source pixel for every output pixel is saved in a lookup table
+ * along with its bilinear interpolation weights.  Applying it to an image is then just a table lookup,
+ * which is done in parallel when concurrency is turned on.
+ *
+ * @author Peter Abeles
+ */
+public class RemovePerspective {
+	// shape of the rendered image
+	int outWidth, outHeight;
+
+	// corners of the quadrilateral in the input image. Clockwise order
+	double[] corners = new double[8];
+	boolean cornersSet = false;
+
+	// If true then pixels outside the input image are set to the closest pixel, otherwise zero
+	boolean extendBorder = false;
+	// If true then interpolation weights are 8-bit fixed point integers
+	boolean fixedPoint = false;
+
+	// Homography from output pixels to input pixels
+	DMatrixRMaj H = new DMatrixRMaj(3,3);
+	Estimate1ofEpipolar computeHomography = FactoryMultiView.homographyDLT(true);
+	List<AssociatedPair> pairs = new ArrayList<>();
+
+	// Shape of the input image the table was computed for. -1 if it needs to be recomputed
+	int tableWidth = -1, tableHeight = -1;
+	// Coordinate of the top-left pixel which is sampled. x is -1 if the pixel is outside the input image
+	int[] tableX = new int[0];
+	int[] tableY = new int[0];
+	// Bilinear weights for x and y as floats
+	float[] tableAX = new float[0];
+	float[] tableAY = new float[0];
+	// Bilinear weights for x and y as fixed point. x is stored in the upper 16-bits and y in the lower
+	int[] tableFixed = new int[0];
+
+	public RemovePerspective(int outWidth, int outHeight) {
+		this.outWidth = outWidth;
+		this.outHeight = outHeight;
+
+		for (int i = 0; i < 4; i++) {
+			pairs.add(new AssociatedPair());
+		}
+		pairs.get(0).p1.set(0,0);
+		pairs.get(1).p1.set(outWidth-1,0);
+		pairs.get(2).p1.set(outWidth-1,outHeight-1);
+		pairs.get(3).p1.set(0,outHeight-1);
+	}
+
+	/**
+	 * Specifies the corners of the region in the input image, in clockwise order.  If the corners are the same
+	 * as before then nothing is recomputed.
+	 *
+	 * @return true if the corners changed
+	 */
+	public boolean setCorners( double x0, double y0,
+							   double x1, double y1,
+							   double x2, double y2,
+							   double x3, double y3 ) {
+		double[] c = new double[]{x0,y0,x1,y1,x2,y2,x3,y3};
+		if( cornersSet && Arrays.equals(c,corners) )
+			return false;
+
+		System.arraycopy(c,0,corners,0,8);
+		cornersSet = true;
+		for (int i = 0; i < 4; i++) {
+			pairs.get(i).p2.set(corners[i*2],corners[i*2+1]);
+		}
+		if( !computeHomography.process(pairs, H) )
+			throw new RuntimeException("Failed to compute homography");
+		tableWidth = tableHeight = -1;
+		return true;
+	}
+
+	/**
+	 * If true then pixels outside the input image are set to the value of the closest pixel.  Otherwise
+	 * they are set to zero.
+	 */
+	public void setExtendBorder( boolean extendBorder ) {
+		if( this.extendBorder != extendBorder )
+			tableWidth = tableHeight = -1;
+		this.extendBorder = extendBorder;
+	}
+
+	/**
+	 * If true then integer images are interpolated with 8-bit fixed point weights, which is faster but
+	 * slightly less accurate.  Floating point images always use floating point weights.
+	 */
+	public void setFixedPoint( boolean fixedPoint ) {
+		this.fixedPoint = fixedPoint;
+	}
+
+	/**
+	 * Renders the region inside a gray image
+	 */
+	public SimpleGray apply( SimpleGray input ) {
+		ImageGray output = (ImageGray)Boof.pool.newImage(input.image.getImageType(),outWidth,outHeight);
+		return apply(input, new SimpleGray(output));
+	}
+
+	/**
+	 * Renders the region inside a gray image into the provided output
+	 *
+	 * @param output Storage for the results.  Must be the same type as the input. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleGray apply( SimpleGray input , SimpleGray output ) {
+		output.invalidateCache();
+		apply((ImageGray)input.image,(ImageGray)output.image);
+		return output;
+	}
+
+	/**
+	 * Renders the region inside a color image
+	 */
+	public SimpleColor apply( SimpleColor input ) {
+		Planar output = (Planar)Boof.pool.newImage(input.image.getImageType(),outWidth,outHeight);
+		return apply(input, new SimpleColor(output));
+	}
+
+	/**
+	 * Renders the region inside a color image into the provided output
+	 *
+	 * @param output Storage for the results.  Must be the same type as the input. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleColor apply( SimpleColor input , SimpleColor output ) {
+		Planar in = (Planar)input.image;
+		Planar out = (Planar)output.image;
+		out.reshape(outWidth,outHeight);
+		for (int band = 0; band < in.getNumBands(); band++) {
+			apply(in.getBand(band),out.getBand(band));
+		}
+		return output;
+	}
+
+	/**
+	 * Renders the region directly from the pixels in a PImage
+	 */
+	public PImage apply( PImage input ) {
+		return apply(input, Boof.pool.newPImage(outWidth,outHeight));
+	}
+
+	/**
+	 * Renders the region directly from the pixels in a PImage into the provided output
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public PImage apply( PImage input , PImage output ) {
+		ConvertProcessing.reshape(output,outWidth,outHeight);
+		updateTable(input.width,input.height);
+
+		if( ConvertProcessing.isConcurrent(outWidth,outHeight) ) {
+			BoofConcurrency.loopBlocks(0,outHeight,(y0,y1)->applyRGB(input,output,y0,y1));
+		} else {
+			applyRGB(input,output,0,outHeight);
+		}
+		return output;
+	}
+
+	void apply( ImageGray input , ImageGray output ) {
+		output.reshape(outWidth,outHeight);
+		updateTable(input.width,input.height);
+
+		if( input instanceof GrayU8 ) {
+			GrayU8 in = (GrayU8)input, out = (GrayU8)output;
+			if( ConvertProcessing.isConcurrent(outWidth,outHeight) ) {
+				BoofConcurrency.loopBlocks(0,outHeight,(y0,y1)->applyU8(in,out,y0,y1));
+			} else {
+				applyU8(in,out,0,outHeight);
+			}
+		} else if( input instanceof GrayF32 ) {
+			GrayF32 in = (GrayF32)input, out = (GrayF32)output;
+			if( ConvertProcessing.isConcurrent(outWidth,outHeight) ) {
+				BoofConcurrency.loopBlocks(0,outHeight,(y0,y1)->applyF32(in,out,y0,y1));
+			} else {
+				applyF32(in,out,0,outHeight);
+			}
+		} else {
+			throw new RuntimeException("Unknown image type");
+		}
+	}
+
+	void applyU8( GrayU8 input , GrayU8 output , int y0 , int y1 ) {
+		final int w = input.width;
+		for (int y = y0; y < y1; y++) {
+			int indexTable = y*outWidth;
+			int indexOut = output.startIndex + y*output.stride;
+			for (int x = 0; x < outWidth; x++, indexTable++, indexOut++) {
+				int px = tableX[indexTable];
+				if( px < 0 ) {
+					output.data[indexOut] = 0;
+					continue;
+				}
+				int index00 = input.startIndex + tableY[indexTable]*input.stride + px;
+				int dx = px+1 < w ? 1 : 0;
+				int dy = tableY[indexTable]+1 < input.height ? input.stride : 0;
+
+				int p00 = input.data[index00] & 0xFF;
+				int p10 = input.data[index00+dx] & 0xFF;
+				int p01 = input.data[index00+dy] & 0xFF;
+				int p11 = input.data[index00+dx+dy] & 0xFF;
+
+				if( fixedPoint ) {
+					int weights = tableFixed[indexTable];
+					int ax = weights >>> 16, ay = weights & 0xFFFF;
+					int top = (256-ax)*p00 + ax*p10;
+					int bottom = (256-ax)*p01 + ax*p11;
+					output.data[indexOut] = (byte)(((256-ay)*top + ay*bottom + 32768) >> 16);
+				} else {
+					float ax = tableAX[indexTable], ay = tableAY[indexTable];
+					float top = (1-ax)*p00 + ax*p10;
+					float bottom = (1-ax)*p01 + ax*p11;
+					output.data[indexOut] = (byte)((1-ay)*top + ay*bottom);
+				}
+			}
+		}
+	}
+
+	void applyF32( GrayF32 input , GrayF32 output , int y0 , int y1 ) {
+		final int w = input.width;
+		for (int y = y0; y < y1; y++) {
+			int indexTable = y*outWidth;
+			int indexOut = output.startIndex + y*output.stride;
+			for (int x = 0; x < outWidth; x++, indexTable++, indexOut++) {
+				int px = tableX[indexTable];
+				if( px < 0 ) {
+					output.data[indexOut] = 0;
+					continue;
+				}
+				int index00 = input.startIndex + tableY[indexTable]*input.stride + px;
+				int dx = px+1 < w ? 1 : 0;
+				int dy = tableY[indexTable]+1 < input.height ? input.stride : 0;
+
+				float ax = tableAX[indexTable], ay = tableAY[indexTable];
+				float top = (1-ax)*input.data[index00] + ax*input.data[index00+dx];
+				float bottom = (1-ax)*input.data[index00+dy] + ax*input.data[index00+dx+dy];
+				output.data[indexOut] = (1-ay)*top + ay*bottom;
+			}
+		}
+	}
+
+	void applyRGB( PImage input , PImage output , int y0 , int y1 ) {
+		final int w = input.width;
+		for (int y = y0; y < y1; y++) {
+			int indexTable = y*outWidth;
+			for (int x = 0; x < outWidth; x++, indexTable++) {
+				int px = tableX[indexTable];
+				if( px < 0 ) {
+					output.pixels[indexTable] = 0xFF000000;
+					continue;
+				}
+				int index00 = tableY[indexTable]*w + px;
+				int dx = px+1 < w ? 1 : 0;
+				int dy = tableY[indexTable]+1 < input.height ? w : 0;
+
+				int p00 = input.pixels[index00];
+				int p10 = input.pixels[index00+dx];
+				int p01 = input.pixels[index00+dy];
+				int p11 = input.pixels[index00+dx+dy];
+
+				int rgb = 0xFF000000;
+				if( fixedPoint ) {
+					int weights = tableFixed[indexTable];
+					int ax = weights >>> 16, ay = weights & 0xFFFF;
+					for (int shift = 0; shift <= 16; shift += 8) {
+						int top = (256-ax)*((p00>>shift)&0xFF) + ax*((p10>>shift)&0xFF);
+						int bottom = (256-ax)*((p01>>shift)&0xFF) + ax*((p11>>shift)&0xFF);
+						rgb |= (((256-ay)*top + ay*bottom + 32768) >> 16) << shift;
+					}
+				} else {
+					float ax = tableAX[indexTable], ay = tableAY[indexTable];
+					for (int shift = 0; shift <= 16; shift += 8) {
+						float top = (1-ax)*((p00>>shift)&0xFF) + ax*((p10>>shift)&0xFF);
+						float bottom = (1-ax)*((p01>>shift)&0xFF) + ax*((p11>>shift)&0xFF);
+						rgb |= ((int)((1-ay)*top + ay*bottom)) << shift;
+					}
+				}
+				output.pixels[indexTable] = rgb;
+			}
+		}
+	}
+
+	/**
+	 * Computes the lookup table if the input shape has changed or the corners changed
+	 */
+	void updateTable( int inputWidth , int inputHeight ) {
+		if( !cornersSet )
+			throw new IllegalArgumentException("Must call setCorners() first");
+		if( inputWidth == tableWidth && inputHeight == tableHeight )
+			return;
+		tableWidth = inputWidth;
+		tableHeight = inputHeight;
+
+		int N = outWidth*outHeight;
+		if( tableX.length < N ) {
+			tableX = new int[N];
+			tableY = new int[N];
+			tableAX = new float[N];
+			tableAY = new float[N];
+			tableFixed = new int[N];
+		}
+
+		if( ConvertProcessing.isConcurrent(outWidth,outHeight) ) {
+			BoofConcurrency.loopBlocks(0,outHeight,this::computeTable);
+		} else {
+			computeTable(0,outHeight);
+		}
+	}
+
+	void computeTable( int y0 , int y1 ) {
+		final double[] h = H.data;
+		for (int y = y0; y < y1; y++) {
+			int index = y*outWidth;
+			for (int x = 0; x < outWidth; x++, index++) {
+				double z = h[6]*x + h[7]*y + h[8];
+				double sx = (h[0]*x + h[1]*y + h[2])/z;
+				double sy = (h[3]*x + h[4]*y + h[5])/z;
+
+				if( extendBorder ) {
+					sx = Math.max(0,Math.min(tableWidth-1,sx));
+					sy = Math.max(0,Math.min(tableHeight-1,sy));
+				} else if( !(sx >= 0 && sy >= 0 && sx <= tableWidth-1 && sy <= tableHeight-1) ) {
+					tableX[index] = -1;
+					continue;
+				}
+
+				int px = (int)sx, py = (int)sy;
+				float ax = (float)(sx-px), ay = (float)(sy-py);
+				tableX[index] = px;
+				tableY[index] = py;
+				tableAX[index] = ax;
+				tableAY[index] = ay;
+				tableFixed[index] = (int)(ax*256) << 16 | (int)(ay*256);
+			}
+		}
+	}
+
+	public int getOutputWidth() {
+		return outWidth;
+	}
+
+	public int getOutputHeight() {
+		return outHeight;
+	}
+
+	/**
+	 * Homography which maps pixels in the output image to pixels in the input image
+	 */
+	public DMatrixRMaj getHomography() {
+		return H;
+	}
+}
@@ -25,29 +25,55 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Storage for results from blob finding in a binary image
+ * Storage for results from blob finding in a binary image.  Contours are saved in a compact format and are
+ * only converted into BoofCV's format when requested.
  *
  * @author Peter Abeles
  */
 public class ResultsBlob {
 
-	public List<Contour> contour;
+	// Contours in BoofCV's format. Created by getContourList() if null, so it's only accessed through there
+	private List<Contour> contour;
+	public SimplePackedContours packed;
 	public GrayS32 labeled;
 
 	public ResultsBlob(List<Contour> contour, GrayS32 labeled) {
 		this.contour = contour;
 		this.labeled = labeled;
+		this.packed = new SimplePackedContours();
+		for( Contour c : contour ) {
+			packed.add(c);
+		}
+	}
+
+	public ResultsBlob(SimplePackedContours packed, GrayS32 labeled) {
+		this.packed = packed;
+		this.labeled = labeled;
 	}
 
 	public SimpleLabeledImage getLabeledImage() {
 		return new SimpleLabeledImage(labeled);
 	}
 
+	/**
+	 * Returns the contours in BoofCV's format, which creates an object for every point.  They are converted the
+	 * first time this is called and the same list is returned afterwards.
+	 */
+	public List<Contour> getContourList() {
+		if( contour == null ) {
+			contour = new ArrayList<>(packed.size());
+			for (int i = 0; i < packed.size(); i++) {
+				contour.add(packed.toContour(i));
+			}
+		}
+		return contour;
+	}
+
 	public SimpleContourList getContours() {
 		List<SimpleContour> contours = new ArrayList<SimpleContour>();
 
-		for( Contour c : this.contour ) {
-			contours.add( new SimpleContour(c));
+		for (int i = 0; i < packed.size(); i++) {
+			contours.add( new SimpleContour(packed,i));
 		}
 
 		return new SimpleContourList(contours,labeled.width,labeled.height);
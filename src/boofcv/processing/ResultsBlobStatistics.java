@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2011-2020, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.processing;
+
+import boofcv.struct.ConnectRule;
+import boofcv.struct.image.GrayS32;
+import boofcv.struct.image.GrayU8;
+import boofcv.struct.image.ImageType;
+
+import java.util.Arrays;
+
+/**
+ * Statistics of each blob in a binary image, saved in arrays of primitives.  Much faster than finding contours
+ * when only the size and location of blobs is needed.  Blobs are found by labeling a run-length encoding
+ * of the image, then blobs with an area outside the allowed range are discarded.
+ *
+ * Blob i, from 0 to size-1, is described by element i in each array.  The same instance can be reused.
+ *
+ * @see SimpleRunLengthBinary
+ *
+ * @author Peter Abeles
+ */
+public class ResultsBlobStatistics {
+	// number of blobs
+	public int size;
+
+	// number of pixels in each blob
+	public int[] area = new int[0];
+	// bounding box. Lower extent is inclusive and upper extent is exclusive
+	public int[] x0 = new int[0], y0 = new int[0], x1 = new int[0], y1 = new int[0];
+	// centroid
+	public double[] centerX = new double[0], centerY = new double[0];
+	// second order central moments, divided by the area.  i.e. the covariance of pixel coordinates
+	public double[] mxx = new double[0], myy = new double[0], mxy = new double[0];
+
+	// encoded image which blobs were found in
+	SimpleRunLengthBinary runs = new SimpleRunLengthBinary();
+	// look up table from run label to index of blob. -1 if discarded
+	int[] labelToBlob = new int[0];
+
+	/**
+	 * Finds blobs in the binary image and computes their statistics
+	 *
+	 * @param rule Connectivity rule
+	 * @param minArea Blobs with fewer pixels than this are discarded
+	 * @param maxArea Blobs with more pixels than this are discarded
+	 * @return this
+	 */
+	public ResultsBlobStatistics process( SimpleBinary binary , ConnectRule rule , int minArea , int maxArea ) {
+		runs.setTo(binary);
+		int numLabels = runs.label(rule);
+
+		// decide which blobs are kept before doing anything else
+		if( labelToBlob.length < numLabels+1 )
+			labelToBlob = new int[numLabels+1];
+		size = 0;
+		for (int label = 1; label <= numLabels; label++) {
+			int a = runs.getBlobArea(label);
+			labelToBlob[label] = a >= minArea && a <= maxArea ? size++ : -1;
+		}
+		reset();
+
+		// sums of coordinates and squared coordinates
+		double[] sumX = centerX, sumY = centerY;
+		double[] sumXX = mxx, sumYY = myy, sumXY = mxy;
+
+		final int height = runs.height;
+		for (int y = 0; y < height; y++) {
+			for (int run = runs.rowStart[y]; run < runs.rowStart[y+1]; run++) {
+				int blob = labelToBlob[runs.runLabel[run]];
+				if( blob < 0 )
+					continue;
+				int a = runs.runX0[run], b = runs.runX1[run];
+				int N = b-a;
+
+				area[blob] += N;
+				x0[blob] = Math.min(x0[blob],a);
+				x1[blob] = Math.max(x1[blob],b);
+				y0[blob] = Math.min(y0[blob],y);
+				y1[blob] = Math.max(y1[blob],y+1);
+
+				// closed form sums along the run
+				double sx = (a + b - 1)*(double)N/2.0;
+				double sxx = sumSquares(b-1) - sumSquares(a-1);
+				sumX[blob] += sx;
+				sumY[blob] += (double)N*y;
+				sumXX[blob] += sxx;
+				sumYY[blob] += (double)N*y*y;
+				sumXY[blob] += sx*y;
+			}
+		}
+
+		for (int blob = 0; blob < size; blob++) {
+			double A = area[blob];
+			double cx = sumX[blob]/A, cy = sumY[blob]/A;
+			centerX[blob] = cx;
+			centerY[blob] = cy;
+			mxx[blob] = sumXX[blob]/A - cx*cx;
+			myy[blob] = sumYY[blob]/A - cy*cy;
+			mxy[blob] = sumXY[blob]/A - cx*cy;
+		}
+
+		return this;
+	}
+
+	/**
+	 * Sum of i^2 for i = 0 to k
+	 */
+	static double sumSquares( int k ) {
+		if( k <= 0 )
+			return 0;
+		return k*(k+1.0)*(2.0*k+1.0)/6.0;
+	}
+
+	/**
+	 * Grows the arrays and initializes the sums
+	 */
+	void reset() {
+		if( area.length < size ) {
+			area = new int[size];
+			x0 = new int[size]; y0 = new int[size];
+			x1 = new int[size]; y1 = new int[size];
+			centerX = new double[size]; centerY = new double[size];
+			mxx = new double[size]; myy = new double[size]; mxy = new double[size];
+		}
+		Arrays.fill(area,0,size,0);
+		Arrays.fill(x0,0,size,Integer.MAX_VALUE);
+		Arrays.fill(y0,0,size,Integer.MAX_VALUE);
+		Arrays.fill(x1,0,size,0);
+		Arrays.fill(y1,0,size,0);
+		Arrays.fill(centerX,0,size,0);
+		Arrays.fill(centerY,0,size,0);
+		Arrays.fill(mxx,0,size,0);
+		Arrays.fill(myy,0,size,0);
+		Arrays.fill(mxy,0,size,0);
+	}
+
+	/**
+	 * Orientation of the blob's major axis in radians
+	 */
+	public double orientation( int blob ) {
+		return 0.5*Math.atan2(2*mxy[blob], mxx[blob]-myy[blob]);
+	}
+
+	/**
+	 * Renders a binary image which only contains the blobs which were kept.  Use it to find contours of only
+	 * these blobs.
+	 */
+	public SimpleBinary binary() {
+		GrayU8 output = Boof.pool.newImage(ImageType.single(GrayU8.class),runs.width,runs.height);
+		for (int y = 0; y < runs.height; y++) {
+			int index = output.startIndex + y*output.stride;
+			Arrays.fill(output.data,index,index+runs.width,(byte)0);
+			for (int run = runs.rowStart[y]; run < runs.rowStart[y+1]; run++) {
+				if( labelToBlob[runs.runLabel[run]] >= 0 )
+					Arrays.fill(output.data,index+runs.runX0[run],index+runs.runX1[run],(byte)1);
+			}
+		}
+		return new SimpleBinary(output);
+	}
+
+	/**
+	 * Renders a labeled image where blob i has a value of i+1 and the background is 0
+	 */
+	public SimpleLabeledImage labeled() {
+		GrayS32 output = Boof.pool.newImage(ImageType.single(GrayS32.class),runs.width,runs.height);
+		for (int y = 0; y < runs.height; y++) {
+			int index = output.startIndex + y*output.stride;
+			Arrays.fill(output.data,index,index+runs.width,0);
+			for (int run = runs.rowStart[y]; run < runs.rowStart[y+1]; run++) {
+				int blob = labelToBlob[runs.runLabel[run]];
+				if( blob >= 0 )
+					Arrays.fill(output.data,index+runs.runX0[run],index+runs.runX1[run],blob+1);
+			}
+		}
+		return new SimpleLabeledImage(output);
+	}
+}
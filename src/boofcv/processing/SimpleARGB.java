@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2011-2020, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.processing;
+
+import boofcv.struct.image.GrayF32;
+import boofcv.struct.image.GrayS32;
+import boofcv.struct.image.GrayU8;
+import boofcv.struct.image.ImageDataType;
+import processing.core.PConstants;
+import processing.core.PImage;
+
+/**
+ * Simplified interface for a packed ARGB image which is a view into {@link PImage#pixels}.  No data is
+ * copied when the view is created, so changes to the PImage are visible here and vice versa.  Useful
+ * for read-only pipelines which would otherwise convert the entire frame before doing anything.
+ *
+ * @see PackedProcessing
+ *
+ * @author Peter Abeles
+ */
+public class SimpleARGB extends SimpleImage<GrayS32> {
+	// the PImage which owns the pixel data
+	PImage owner;
+	// Work space used by operations which write into this image
+	GrayS32 work;
+
+	public SimpleARGB(PImage image) {
+		super(new GrayS32());
+		wrap(image);
+	}
+
+	/**
+	 * Changes which PImage is being viewed.  Nothing is allocated or copied.
+	 */
+	public void wrap( PImage image ) {
+		this.owner = image;
+		this.image.data = image.pixels;
+		this.image.width = image.width;
+		this.image.height = image.height;
+		this.image.stride = image.width;
+		this.image.startIndex = 0;
+		this.image.subImage = false;
+	}
+
+	/**
+	 * Extracts a gray scale image by averaging the color channels
+	 *
+	 * @param type Data type of image pixel.  F32 or U8
+	 */
+	public SimpleGray gray( ImageDataType type ) {
+		if( type == ImageDataType.F32 ) {
+			return gray(new SimpleGray(new GrayF32(image.width,image.height)));
+		} else if( type == ImageDataType.U8 ) {
+			return gray(new SimpleGray(new GrayU8(image.width,image.height)));
+		} else {
+			throw new RuntimeException("Unsupport type: " + type);
+		}
+	}
+
+	/**
+	 * Same as {@link #gray(ImageDataType)} but writes into the provided output.  The output's data type
+	 * determines the data type of the gray image.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleGray gray( SimpleGray output ) {
+		output.invalidateCache();
+		if( output.image instanceof GrayF32 ) {
+			PackedProcessing.gray(image,(GrayF32)output.image);
+		} else if( output.image instanceof GrayU8 ) {
+			PackedProcessing.gray(image,(GrayU8)output.image);
+		} else {
+			throw new RuntimeException("Unknown image type");
+		}
+		return output;
+	}
+
+	/**
+	 * @see PackedProcessing#blurMean
+	 */
+	public SimpleARGB blurMean( int radius ) {
+		return blurMean(radius, new SimpleARGB(new PImage(image.width,image.height, PConstants.RGB)));
+	}
+
+	/**
+	 * Same as {@link #blurMean(int)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Its PImage is reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleARGB blurMean( int radius , SimpleARGB output ) {
+		if( output.owner.width != image.width || output.owner.height != image.height ) {
+			ConvertProcessing.reshape(output.owner,image.width,image.height);
+			output.wrap(output.owner);
+		}
+		if( output.work == null )
+			output.work = new GrayS32(image.width,image.height);
+		PackedProcessing.blurMean(image,radius,output.image,output.work);
+		return output;
+	}
+
+	/**
+	 * Thresholds the gray scale value of each pixel.
+	 *
+	 * @see PackedProcessing#threshold
+	 */
+	public SimpleBinary threshold( double threshold, boolean down ) {
+		return threshold(threshold, down, new SimpleBinary(new GrayU8(image.width,image.height)));
+	}
+
+	/**
+	 * Same as {@link #threshold(double, boolean)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary threshold( double threshold, boolean down , SimpleBinary output ) {
+		PackedProcessing.threshold(image,threshold,down,output.image);
+		return output;
+	}
+
+	/**
+	 * Returns the PImage which is being viewed.  Nothing is copied.
+	 */
+	public PImage convert() {
+		return owner;
+	}
+}
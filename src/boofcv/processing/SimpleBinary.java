@@ -19,15 +19,12 @@
 package boofcv.processing;
 
 import boofcv.alg.filter.binary.BinaryImageOps;
-import boofcv.alg.filter.binary.Contour;
 import boofcv.struct.ConnectRule;
 import boofcv.struct.image.GrayS32;
 import boofcv.struct.image.GrayU8;
-import processing.core.PConstants;
+import boofcv.struct.image.ImageType;
 import processing.core.PImage;
 
-import java.util.List;
-
 /**
  * Simplified interface for handling binary images
  *
@@ -36,85 +33,353 @@ import java.util.List;
 public class SimpleBinary {
 	GrayU8 image;
 
+	// work space for morphology. Created when first used
+	SimpleMorphology morphology;
+	// work space for finding contours. Created when first used
+	SimpleContourFinder contourFinder;
+
 	public SimpleBinary(GrayU8 image) {
 		this.image = image;
 	}
 
+	/**
+	 * Creates a pipeline which records operations on this image and runs them together in a single pass
+	 * when the results are requested.
+	 *
+	 * @see SimplePipeline
+	 */
+	public SimplePipeline pipeline() {
+		return new SimplePipeline(image,true);
+	}
+
+	/**
+	 * Converts into a bit-packed binary image, which is much faster for logical operations and morphology.
+	 *
+	 * @see SimplePackedBinary
+	 */
+	public SimplePackedBinary packed() {
+		return new SimplePackedBinary(this);
+	}
+
+	/**
+	 * Same as {@link #packed()} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimplePackedBinary packed( SimplePackedBinary output ) {
+		return output.setTo(this);
+	}
+
+	/**
+	 * Converts into a run-length encoded binary image, which is much faster for sparse images.
+	 *
+	 * @see SimpleRunLengthBinary
+	 */
+	public SimpleRunLengthBinary runLength() {
+		return new SimpleRunLengthBinary(this);
+	}
+
+	/**
+	 * Same as {@link #runLength()} but writes into the provided output.
+	 *
+	 * @param output Storage for the results.
+	 * @return The output
+	 */
+	public SimpleRunLengthBinary runLength( SimpleRunLengthBinary output ) {
+		return output.setTo(this);
+	}
+
 	public SimpleBinary logicAnd( SimpleBinary imgB ) {
-		GrayU8 out = new GrayU8(image.width, image.height);
-		BinaryImageOps.logicAnd(image, imgB.image, out);
-		return new SimpleBinary(out);
+		return logicAnd(imgB, newBinary());
+	}
+
+	/**
+	 * Same as {@link #logicAnd(SimpleBinary)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary logicAnd( SimpleBinary imgB , SimpleBinary output ) {
+		BinaryImageOps.logicAnd(image, imgB.image, output(output));
+		return output;
 	}
 
 	public SimpleBinary logicOr( SimpleBinary imgB ) {
-		GrayU8 out = new GrayU8(image.width, image.height);
-		BinaryImageOps.logicOr(image,imgB.image,out);
-		return new SimpleBinary(out);
+		return logicOr(imgB, newBinary());
+	}
+
+	/**
+	 * Same as {@link #logicOr(SimpleBinary)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary logicOr( SimpleBinary imgB , SimpleBinary output ) {
+		BinaryImageOps.logicOr(image,imgB.image,output(output));
+		return output;
 	}
 
 	public SimpleBinary logicXor( SimpleBinary imgB ) {
-		GrayU8 out = new GrayU8(image.width, image.height);
-		BinaryImageOps.logicXor(image,imgB.image,out);
-		return new SimpleBinary(out);
+		return logicXor(imgB, newBinary());
+	}
+
+	/**
+	 * Same as {@link #logicXor(SimpleBinary)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary logicXor( SimpleBinary imgB , SimpleBinary output ) {
+		BinaryImageOps.logicXor(image,imgB.image,output(output));
+		return output;
 	}
 
 	public SimpleBinary erode4( int numTimes ) {
-		GrayU8 out = new GrayU8(image.width, image.height);
-		BinaryImageOps.erode4(image,numTimes,out);
-		return new SimpleBinary(out);
+		return erode4(numTimes, newBinary());
+	}
+
+	/**
+	 * Same as {@link #erode4(int)} but writes into the provided output.  Large values of numTimes are
+	 * handled efficiently by {@link SimpleMorphology}.
+	 *
+	 * @param output Storage for the results. Reshaped if needed. Can be this image.
+	 * @return The output
+	 */
+	public SimpleBinary erode4( int numTimes , SimpleBinary output ) {
+		return morphology().erode4(this,numTimes,output);
 	}
 
 	public SimpleBinary erode8( int numTimes ) {
-		GrayU8 out = new GrayU8(image.width, image.height);
-		BinaryImageOps.erode8(image,numTimes,out);
-		return new SimpleBinary(out);
+		return erode8(numTimes, newBinary());
+	}
+
+	/**
+	 * Same as {@link #erode8(int)} but writes into the provided output.  Large values of numTimes are
+	 * handled efficiently by {@link SimpleMorphology}.
+	 *
+	 * @param output Storage for the results. Reshaped if needed. Can be this image.
+	 * @return The output
+	 */
+	public SimpleBinary erode8( int numTimes , SimpleBinary output ) {
+		return morphology().erode8(this,numTimes,output);
 	}
 
 	public SimpleBinary dilate4( int numTimes ) {
-		GrayU8 out = new GrayU8(image.width, image.height);
-		BinaryImageOps.dilate4(image,numTimes,out);
-		return new SimpleBinary(out);
+		return dilate4(numTimes, newBinary());
+	}
+
+	/**
+	 * Same as {@link #dilate4(int)} but writes into the provided output.  Large values of numTimes are
+	 * handled efficiently by {@link SimpleMorphology}.
+	 *
+	 * @param output Storage for the results. Reshaped if needed. Can be this image.
+	 * @return The output
+	 */
+	public SimpleBinary dilate4( int numTimes , SimpleBinary output ) {
+		return morphology().dilate4(this,numTimes,output);
 	}
 
 	public SimpleBinary dilate8( int numTimes ) {
-		GrayU8 out = new GrayU8(image.width, image.height);
-		BinaryImageOps.dilate8(image,numTimes,out);
-		return new SimpleBinary(out);
+		return dilate8(numTimes, newBinary());
+	}
+
+	/**
+	 * Same as {@link #dilate8(int)} but writes into the provided output.  Large values of numTimes are
+	 * handled efficiently by {@link SimpleMorphology}.
+	 *
+	 * @param output Storage for the results. Reshaped if needed. Can be this image.
+	 * @return The output
+	 */
+	public SimpleBinary dilate8( int numTimes , SimpleBinary output ) {
+		return morphology().dilate8(this,numTimes,output);
+	}
+
+	/**
+	 * Erode followed by dilate with a 4-connect rule.
+	 *
+	 * @see SimpleMorphology#open4
+	 */
+	public SimpleBinary open4( int numTimes ) {
+		return open4(numTimes, newBinary());
+	}
+
+	/**
+	 * Same as {@link #open4(int)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed. Can be this image.
+	 * @return The output
+	 */
+	public SimpleBinary open4( int numTimes , SimpleBinary output ) {
+		return morphology().open4(this,numTimes,output);
+	}
+
+	/**
+	 * Erode followed by dilate with an 8-connect rule.
+	 *
+	 * @see SimpleMorphology#open8
+	 */
+	public SimpleBinary open8( int numTimes ) {
+		return open8(numTimes, newBinary());
+	}
+
+	/**
+	 * Same as {@link #open8(int)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed. Can be this image.
+	 * @return The output
+	 */
+	public SimpleBinary open8( int numTimes , SimpleBinary output ) {
+		return morphology().open8(this,numTimes,output);
+	}
+
+	/**
+	 * Dilate followed by erode with a 4-connect rule.
+	 *
+	 * @see SimpleMorphology#close4
+	 */
+	public SimpleBinary close4( int numTimes ) {
+		return close4(numTimes, newBinary());
+	}
+
+	/**
+	 * Same as {@link #close4(int)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed. Can be this image.
+	 * @return The output
+	 */
+	public SimpleBinary close4( int numTimes , SimpleBinary output ) {
+		return morphology().close4(this,numTimes,output);
+	}
+
+	/**
+	 * Dilate followed by erode with an 8-connect rule.
+	 *
+	 * @see SimpleMorphology#close8
+	 */
+	public SimpleBinary close8( int numTimes ) {
+		return close8(numTimes, newBinary());
+	}
+
+	/**
+	 * Same as {@link #close8(int)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed. Can be this image.
+	 * @return The output
+	 */
+	public SimpleBinary close8( int numTimes , SimpleBinary output ) {
+		return morphology().close8(this,numTimes,output);
 	}
 
 	public SimpleBinary edge4() {
-		GrayU8 out = new GrayU8(image.width,image.height);
-		BinaryImageOps.edge4(image,out,true);
-		return new SimpleBinary(out);
+		return edge4(newBinary());
+	}
+
+	/**
+	 * Same as {@link #edge4()} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary edge4( SimpleBinary output ) {
+		BinaryImageOps.edge4(image,output(output),true);
+		return output;
 	}
 
 	public SimpleBinary edge8() {
-		GrayU8 out = new GrayU8(image.width,image.height);
-		BinaryImageOps.edge8(image,out,true);
-		return new SimpleBinary(out);
+		return edge8(newBinary());
+	}
+
+	/**
+	 * Same as {@link #edge8()} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary edge8( SimpleBinary output ) {
+		BinaryImageOps.edge8(image,output(output),true);
+		return output;
 	}
 
 	public SimpleBinary removePointNoise() {
-		GrayU8 out = new GrayU8(image.width,image.height);
-		BinaryImageOps.removePointNoise(image, out);
-		return new SimpleBinary(out);
+		return removePointNoise(newBinary());
+	}
+
+	/**
+	 * Same as {@link #removePointNoise()} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary removePointNoise( SimpleBinary output ) {
+		BinaryImageOps.removePointNoise(image, output(output));
+		return output;
 	}
 
 	/**
-	 * Finds the contours of blobs in a binary image.  Uses 8-connect rule
+	 * Finds the contours of blobs in a binary image.  Uses 8-connect rule.  Large images are processed in
+	 * parallel when concurrency is turned on.  The work space is saved and reused by the next call.
 	 *
-	 * @see BinaryImageOps#contour
+	 * @see SimpleContourFinder
 	 */
 	public ResultsBlob contour() {
-		GrayS32 labeled = new GrayS32(image.width,image.height);
+		return contour(contourFinder());
+	}
 
-		List<Contour> contours = BinaryImageOps.contour(image, ConnectRule.EIGHT, labeled);
+	/**
+	 * Same as {@link #contour()} but reuses the work space in the provided finder.
+	 */
+	public ResultsBlob contour( SimpleContourFinder finder ) {
+		GrayS32 labeled = Boof.pool.newImage(ImageType.single(GrayS32.class),image.width,image.height);
+
+		SimplePackedContours contours = new SimplePackedContours();
+		finder.process(this, ConnectRule.EIGHT, labeled, contours);
 
 		return new ResultsBlob(contours,labeled);
 	}
 
+	/**
+	 * Finds blobs and computes their area, bounding box, centroid, and second moments without finding their
+	 * contours.  Uses 8-connect rule.
+	 *
+	 * @see ResultsBlobStatistics
+	 */
+	public ResultsBlobStatistics blobs() {
+		return blobs(0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Same as {@link #blobs()} but blobs with an area outside the specified range are discarded.
+	 *
+	 * @param minArea Minimum number of pixels in a blob
+	 * @param maxArea Maximum number of pixels in a blob
+	 */
+	public ResultsBlobStatistics blobs( int minArea , int maxArea ) {
+		return blobs(minArea, maxArea, new ResultsBlobStatistics());
+	}
+
+	/**
+	 * Same as {@link #blobs(int,int)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results.
+	 * @return The output
+	 */
+	public ResultsBlobStatistics blobs( int minArea , int maxArea , ResultsBlobStatistics output ) {
+		return output.process(this, ConnectRule.EIGHT, minArea, maxArea);
+	}
+
 	public PImage visualize() {
-		PImage out = new PImage(image.width, image.height, PConstants.RGB);
+		return visualize(Boof.pool.newPImage(image.width, image.height));
+	}
+
+	/**
+	 * Same as {@link #visualize()} but writes into the provided output.
+	 *
+	 * @param out Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public PImage visualize( PImage out ) {
+		ConvertProcessing.reshape(out,image.width,image.height);
 
 		int indexOut = 0;
 		for (int y = 0; y < image.height; y++) {
@@ -127,6 +392,37 @@ public class SimpleBinary {
 		return out;
 	}
 
+	/**
+	 * Work space used by erode, dilate, open, and close.  Created the first time it's needed and then reused,
+	 * so calling those functions on the same SimpleBinary every frame doesn't allocate memory.
+	 */
+	public SimpleMorphology morphology() {
+		if( morphology == null )
+			morphology = new SimpleMorphology();
+		return morphology;
+	}
+
+	/**
+	 * Work space used by {@link #contour()}.  Created the first time it's needed and then reused.
+	 */
+	public SimpleContourFinder contourFinder() {
+		if( contourFinder == null )
+			contourFinder = new SimpleContourFinder();
+		return contourFinder;
+	}
+
+	/**
+	 * Makes sure the output is the same shape as this image
+	 */
+	GrayU8 output( SimpleBinary output ) {
+		output.image.reshape(image.width,image.height);
+		return output.image;
+	}
+
+	private SimpleBinary newBinary() {
+		return new SimpleBinary(Boof.pool.newImage(ImageType.single(GrayU8.class),image.width,image.height));
+	}
+
 	public GrayU8 getImage() {
 		return image;
 	}
@@ -18,27 +18,15 @@
 
 package boofcv.processing;
 
-import boofcv.abst.distort.FDistort;
-import boofcv.abst.geo.Estimate1ofEpipolar;
-import boofcv.alg.distort.PointToPixelTransform_F32;
-import boofcv.alg.distort.PointTransformHomography_F32;
 import boofcv.alg.filter.blur.GBlurImageOps;
 import boofcv.core.image.GConvertImage;
-import boofcv.core.image.GeneralizedImageOps;
-import boofcv.factory.geo.FactoryMultiView;
-import boofcv.struct.geo.AssociatedPair;
 import boofcv.struct.image.GrayF32;
 import boofcv.struct.image.GrayU8;
 import boofcv.struct.image.ImageGray;
+import boofcv.struct.image.ImageType;
 import boofcv.struct.image.Planar;
-import georegression.struct.point.Point2D_F64;
-import org.ejml.data.DMatrixRMaj;
-import org.ejml.data.FMatrixRMaj;
-import org.ejml.ops.ConvertMatrixData;
-import processing.core.PConstants;
 import processing.core.PImage;
 
-import java.util.ArrayList;
 
 /**
  * Simplified interface for handling color images
@@ -53,15 +41,20 @@ public class SimpleColor<Gray extends ImageGray<Gray>> extends SimpleImage<Plana
 	}
 
 	public SimpleColor blurMean( int radius ) {
-		return new SimpleColor((Planar<Gray>)GBlurImageOps.mean(image, null, radius,null, null));
+		Planar<Gray> output = newImage();
+		GBlurImageOps.mean(image, output, radius,null, null);
+		return new SimpleColor(output);
 	}
 
 	public SimpleColor blurMedian( int radius ) {
-		return new SimpleColor((Planar<Gray>)GBlurImageOps.median(image, null, radius,null));
+		Planar<Gray> output = newImage();
+		GBlurImageOps.median(image, output, radius,null);
+		return new SimpleColor(output);
 	}
 
 	/**
-	 * Removes perspective distortion.  4 points must be in 'this' image must be in clockwise order.
+	 * Removes perspective distortion.  4 points must be in 'this' image must be in clockwise order.  To process
+	 * a sequence of images efficiently use {@link Boof#removePerspective} instead, which caches the lookup table.
 	 *
 	 * @param outWidth Width of output image
 	 * @param outHeight Height of output image
@@ -73,46 +66,27 @@ public class SimpleColor<Gray extends ImageGray<Gray>> extends SimpleImage<Plana
 										 double x2, double y2,
 										 double x3, double y3 )
 	{
-		Planar<Gray> output = image.createNew(outWidth,outHeight);
-
-		// Homography estimation algorithm.  Requires a minimum of 4 points
-		Estimate1ofEpipolar computeHomography = FactoryMultiView.homographyDLT(true);
-
-		// Specify the pixel coordinates from destination to target
-		ArrayList<AssociatedPair> associatedPairs = new ArrayList<AssociatedPair>();
-		associatedPairs.add(new AssociatedPair(new Point2D_F64(0,0),new Point2D_F64(x0,y0)));
-		associatedPairs.add(new AssociatedPair(new Point2D_F64(outWidth-1,0),new Point2D_F64(x1,y1)));
-		associatedPairs.add(new AssociatedPair(new Point2D_F64(outWidth-1,outHeight-1),new Point2D_F64(x2,y2)));
-		associatedPairs.add(new AssociatedPair(new Point2D_F64(0,outHeight-1),new Point2D_F64(x3,y3)));
-
-		// Compute the homography
-		DMatrixRMaj H = new DMatrixRMaj(3,3);
-		computeHomography.process(associatedPairs, H);
-		FMatrixRMaj H32 = new FMatrixRMaj(3,3);
-		ConvertMatrixData.convert(H,H32);
-
-		// Create the transform for distorting the image
-		PointTransformHomography_F32 homography = new PointTransformHomography_F32(H32);
-
-		// Apply distortion and show the results
-		new FDistort(image,output).transform(new PointToPixelTransform_F32(homography)).apply();
-
-		return new SimpleColor(output);
+		RemovePerspective alg = new RemovePerspective(outWidth,outHeight);
+		alg.setExtendBorder(true);
+		alg.setCorners(x0,y0,x1,y1,x2,y2,x3,y3);
+		return alg.apply(this);
 	}
 
 	/**
 	 * @see boofcv.alg.filter.blur.GBlurImageOps#gaussian
 	 */
 	public SimpleColor blurGaussian( double sigma, int radius ) {
-		return new SimpleColor((Planar<Gray>)GBlurImageOps.gaussian(image, null, sigma, radius, null));
+		Planar<Gray> output = newImage();
+		GBlurImageOps.gaussian(image, output, sigma, radius, null);
+		return new SimpleColor(output);
 	}
 
 	/**
 	 * Converts the color image into a gray scale image by averaged each pixel across the bands
 	 */
 	public SimpleGray grayMean() {
-		ImageGray out =
-				GeneralizedImageOps.createSingleBand(image.imageType.getDataType(),image.width,image.height);
+		ImageType<Gray> grayType = ImageType.single(image.imageType.getDataType());
+		Gray out = Boof.pool.newImage(grayType,image.width,image.height);
 
 		GConvertImage.average(image, out);
 
@@ -128,7 +102,17 @@ public class SimpleColor<Gray extends ImageGray<Gray>> extends SimpleImage<Plana
 	}
 
 	public PImage convert() {
-		PImage out = new PImage(image.width,image.height, PConstants.RGB);
+		return convert(Boof.pool.newPImage(image.width,image.height));
+	}
+
+	/**
+	 * Same as {@link #convert()} but writes into the provided output.
+	 *
+	 * @param out Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public PImage convert( PImage out ) {
+		ConvertProcessing.reshape(out,image.width,image.height);
 		if( image.getBandType() == GrayF32.class) {
 			ConvertProcessing.convert_PF32_RGB((Planar<GrayF32>)image, out);
 		} else if( image.getBandType() == GrayU8.class ) {
@@ -138,4 +122,8 @@ public class SimpleColor<Gray extends ImageGray<Gray>> extends SimpleImage<Plana
 		}
 		return out;
 	}
+
+	private Planar<Gray> newImage() {
+		return Boof.pool.newImage(image.getImageType(),image.width,image.height);
+	}
 }
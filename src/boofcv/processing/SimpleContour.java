@@ -24,6 +24,7 @@ import boofcv.alg.shapes.ShapeFittingOps;
 import boofcv.struct.PointIndex_I32;
 import georegression.struct.curve.EllipseRotated_F64;
 import georegression.struct.point.Point2D_I32;
+import org.ddogleg.struct.FastQueue;
 import processing.core.PImage;
 
 import java.util.ArrayList;
@@ -35,10 +36,23 @@ import java.util.List;
  * @author Peter Abeles
  */
 public class SimpleContour {
+	// storage for the contour's points
+	SimplePackedContours packed;
+	// index of the contour inside of packed
+	int index;
+	// created when requested
 	Contour contour;
 
 	public SimpleContour(Contour contour) {
 		this.contour = contour;
+		this.packed = new SimplePackedContours();
+		this.packed.add(contour);
+		this.index = 0;
+	}
+
+	public SimpleContour(SimplePackedContours packed , int index ) {
+		this.packed = packed;
+		this.index = index;
 	}
 
 	/**
@@ -53,30 +67,35 @@ public class SimpleContour {
 	 */
 	public List<List<Point2D_I32>> fitPolygon( boolean external , int minimumSideLength , double cornerPenalty ) {
 		List<List<Point2D_I32>> polygons = new ArrayList<List<Point2D_I32>>();
+		fitPolygon(external,minimumSideLength,cornerPenalty,new FastQueue<>(Point2D_I32::new),polygons);
+		return polygons;
+	}
 
+	/**
+	 * Same as {@link #fitPolygon(boolean, int, double)} but the points are copied into the provided work space
+	 * and polygons are added to the provided list
+	 */
+	void fitPolygon( boolean external , int minimumSideLength , double cornerPenalty ,
+					 FastQueue<Point2D_I32> work , List<List<Point2D_I32>> polygons ) {
 		if( external ) {
-			List<PointIndex_I32> output = ShapeFittingOps.
-					fitPolygon(contour.external, true,minimumSideLength,cornerPenalty);
-
-			List<Point2D_I32> poly = new ArrayList<Point2D_I32>();
-			for( PointIndex_I32 p : output ) {
-				poly.add( new Point2D_I32(p.x,p.y));
-			}
-			polygons.add(poly);
+			polygons.add(fitPolygon(packed.externalSet(index),minimumSideLength,cornerPenalty,work));
 		} else {
-			for( List<Point2D_I32> i : contour.internal ) {
-				List<PointIndex_I32> output = ShapeFittingOps.
-						fitPolygon(i, true, minimumSideLength,cornerPenalty);
-
-				List<Point2D_I32> poly = new ArrayList<Point2D_I32>();
-				for (PointIndex_I32 p : output) {
-					poly.add(new Point2D_I32(p.x, p.y));
-				}
-				polygons.add(poly);
+			for (int i = 0; i < packed.internalCount(index); i++) {
+				polygons.add(fitPolygon(packed.internalSet(index,i),minimumSideLength,cornerPenalty,work));
 			}
 		}
+	}
 
-		return polygons;
+	private List<Point2D_I32> fitPolygon( int set , int minimumSideLength , double cornerPenalty ,
+										  FastQueue<Point2D_I32> work ) {
+		List<PointIndex_I32> output = ShapeFittingOps.
+				fitPolygon(packed.getSet(set,work).toList(), true,minimumSideLength,cornerPenalty);
+
+		List<Point2D_I32> poly = new ArrayList<Point2D_I32>();
+		for( PointIndex_I32 p : output ) {
+			poly.add( new Point2D_I32(p.x,p.y));
+		}
+		return poly;
 	}
 
 	/**
@@ -89,35 +108,65 @@ public class SimpleContour {
 	 */
 	public List<EllipseRotated_F64> fitEllipses(boolean external ) {
 		List<EllipseRotated_F64> ellipses = new ArrayList<>();
+		fitEllipses(external,new FastQueue<>(Point2D_I32::new),ellipses);
+		return ellipses;
+	}
 
+	/**
+	 * Same as {@link #fitEllipses(boolean)} but the points are copied into the provided work space
+	 * and ellipses are added to the provided list
+	 */
+	void fitEllipses( boolean external , FastQueue<Point2D_I32> work , List<EllipseRotated_F64> ellipses ) {
 		if( external ) {
-			FitData<EllipseRotated_F64> found = ShapeFittingOps.fitEllipse_I32(contour.external,0,false,null);
-			ellipses.add(found.shape);
+			ellipses.add(fitEllipse(packed.externalSet(index),work));
 		} else {
-			for( List<Point2D_I32> i : contour.internal ) {
-				FitData<EllipseRotated_F64> found = ShapeFittingOps.fitEllipse_I32(i,0,false,null);
-				ellipses.add(found.shape);
+			for (int i = 0; i < packed.internalCount(index); i++) {
+				ellipses.add(fitEllipse(packed.internalSet(index,i),work));
 			}
 		}
+	}
 
-		return ellipses;
+	private EllipseRotated_F64 fitEllipse( int set , FastQueue<Point2D_I32> work ) {
+		FitData<EllipseRotated_F64> found = ShapeFittingOps.fitEllipse_I32(packed.getSet(set,work).toList(),0,false,null);
+		return found.shape;
 	}
 
 	public void visualize( PImage image , int colorExternal , int colorInternal )  {
-		for( Point2D_I32 p : contour.external ) {
-			int index = p.y * image.width + p.x;
-			image.pixels[index] = colorExternal;
-		}
+		packed.visualize(packed.externalSet(index),colorExternal,image.pixels,image.width);
 
-		for( List<Point2D_I32> i : contour.internal ) {
-			for( Point2D_I32 p : i ) {
-				int index = p.y * image.width + p.x;
-				image.pixels[index] = colorInternal;
-			}
+		for (int i = 0; i < packed.internalCount(index); i++) {
+			packed.visualize(packed.internalSet(index,i),colorInternal,image.pixels,image.width);
 		}
 	}
 
+	/**
+	 * Number of points in the external contour
+	 */
+	public int getExternalSize() {
+		return packed.setSize(packed.externalSet(index));
+	}
+
+	/**
+	 * Area inside the external contour, computed using the shoelace formula
+	 */
+	public double getExternalArea() {
+		return packed.area(packed.externalSet(index));
+	}
+
+	/**
+	 * Returns the contour in BoofCV's format.  Creates an object for every point the first time it's called.
+	 */
 	public Contour getContour() {
+		if( contour == null )
+			contour = packed.toContour(index);
 		return contour;
 	}
+
+	public SimplePackedContours getPacked() {
+		return packed;
+	}
+
+	public int getIndex() {
+		return index;
+	}
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2011-2020, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.processing;
+
+import boofcv.alg.filter.binary.BinaryImageOps;
+import boofcv.alg.filter.binary.Contour;
+import boofcv.alg.filter.binary.ContourPacked;
+import boofcv.alg.filter.binary.LinearContourLabelChang2004;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.struct.ConnectRule;
+import boofcv.struct.image.GrayS32;
+import boofcv.struct.image.GrayU8;
+import org.ddogleg.struct.FastQueue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Labels blobs and finds their contours using multiple threads.  Produces the same labeled image and contours,
+ * in the same order, as {@link BinaryImageOps#contour}.  First the run-length encoded image is labeled in
+ * parallel strips, see {@link SimpleRunLengthBinary#label}. Then the contour of each blob is traced
+ * independently in parallel inside of its bounding box.  A contour only depends on the pixels in its own blob
+ * so the results are identical.
+ *
+ * When concurrency is turned off the whole image is processed by {@link LinearContourLabelChang2004}, which is
+ * what {@link BinaryImageOps#contour} uses.  The number of threads is
+ * set using {@link Boof#setMaxThreads}.
+ *
+ * @author Peter Abeles
+ */
+public class SimpleContourFinder {
+	// used when the image is processed by a single thread
+	LinearContourLabelChang2004 finder = new LinearContourLabelChang2004(ConnectRule.EIGHT);
+
+	// encoded image which is labeled
+	SimpleRunLengthBinary runs = new SimpleRunLengthBinary();
+
+	// bounding box of each blob. Upper extent is exclusive
+	int[] x0 = new int[0], y0 = new int[0], x1 = new int[0], y1 = new int[0];
+	// runs sorted by blob. The runs in blob i are from blobStart[i] to blobStart[i+1]-1
+	int[] blobStart = new int[1];
+	int[] blobRuns = new int[0];
+	// row of each run
+	int[] runY = new int[0];
+
+	FastQueue<Workspace> workspaces = new FastQueue<>(Workspace::new);
+	// work space which traced each blob and the index of the contour inside of it
+	Workspace[] owner = new Workspace[0];
+	int[] ownerIndex = new int[0];
+	// storage for contours when converting into BoofCV's format
+	SimplePackedContours contours = new SimplePackedContours();
+
+	/**
+	 * Finds the contour of every blob
+	 *
+	 * @param binary Input binary image
+	 * @param rule Connectivity rule
+	 * @param labeled Storage for the labeled image. Reshaped if needed.
+	 * @param output Storage for the contours. Contour i belongs to the blob with label i+1
+	 */
+	public void process( SimpleBinary binary , ConnectRule rule , GrayS32 labeled , SimplePackedContours output ) {
+		GrayU8 image = binary.image;
+		output.reset();
+		labeled.reshape(image.width,image.height);
+
+		if( !ConvertProcessing.isConcurrent(image.width,image.height) ) {
+			finder.setConnectRule(rule);
+			finder.process(image,labeled);
+			FastQueue<ContourPacked> found = finder.getContours();
+			for (int i = 0; i < found.size; i++) {
+				output.add(finder.getPackedPoints(),found.get(i),0,0);
+			}
+			return;
+		}
+
+		runs.setTo(binary);
+		final int numBlobs = runs.label(rule);
+		runs.labeled(labeled);
+
+		sortRunsByBlob(numBlobs);
+
+		// each thread saves the contours it finds in its own storage, which are then copied in order
+		if( owner.length < numBlobs ) {
+			owner = new Workspace[numBlobs];
+			ownerIndex = new int[numBlobs];
+		}
+		BoofConcurrency.loopBlocks(0,numBlobs,workspaces,(work,idx0,idx1)->{
+			work.finder.setConnectRule(rule);
+			for (int blob = idx0; blob < idx1; blob++) {
+				owner[blob] = work;
+				ownerIndex[blob] = work.contours.size();
+				trace(blob,work);
+			}
+		});
+
+		for (int blob = 0; blob < numBlobs; blob++) {
+			output.add(owner[blob].contours,ownerIndex[blob]);
+		}
+		Arrays.fill(owner,0,numBlobs,null);
+		for (int i = 0; i < workspaces.size; i++) {
+			workspaces.get(i).contours.reset();
+		}
+	}
+
+	/**
+	 * Same as {@link #process(SimpleBinary, ConnectRule, GrayS32, SimplePackedContours)} but returns the contours
+	 * in BoofCV's format
+	 */
+	public List<Contour> process( SimpleBinary binary , ConnectRule rule , GrayS32 labeled ) {
+		process(binary,rule,labeled,contours);
+		List<Contour> list = new ArrayList<>(contours.size());
+		for (int i = 0; i < contours.size(); i++) {
+			list.add(contours.toContour(i));
+		}
+		return list;
+	}
+
+	/**
+	 * Groups the runs by blob, keeping them in raster order, and computes the bounding box of each blob
+	 */
+	void sortRunsByBlob( int numBlobs ) {
+		final int numRuns = runs.numRuns;
+		if( x0.length < numBlobs ) {
+			x0 = new int[numBlobs]; y0 = new int[numBlobs];
+			x1 = new int[numBlobs]; y1 = new int[numBlobs];
+		}
+		if( blobStart.length < numBlobs+1 )
+			blobStart = new int[numBlobs+1];
+		if( blobRuns.length < numRuns ) {
+			blobRuns = new int[numRuns];
+			runY = new int[numRuns];
+		}
+		Arrays.fill(blobStart,0,numBlobs+1,0);
+		Arrays.fill(x0,0,numBlobs,Integer.MAX_VALUE);
+		Arrays.fill(y0,0,numBlobs,Integer.MAX_VALUE);
+		Arrays.fill(x1,0,numBlobs,0);
+		Arrays.fill(y1,0,numBlobs,0);
+
+		for (int y = 0; y < runs.height; y++) {
+			for (int run = runs.rowStart[y]; run < runs.rowStart[y+1]; run++) {
+				int blob = runs.runLabel[run]-1;
+				runY[run] = y;
+				blobStart[blob+1]++;
+				x0[blob] = Math.min(x0[blob],runs.runX0[run]);
+				x1[blob] = Math.max(x1[blob],runs.runX1[run]);
+				y0[blob] = Math.min(y0[blob],y);
+				y1[blob] = Math.max(y1[blob],y+1);
+			}
+		}
+		for (int blob = 0; blob < numBlobs; blob++) {
+			blobStart[blob+1] += blobStart[blob];
+		}
+		// blobStart is used as the insertion point then shifted back
+		for (int run = 0; run < numRuns; run++) {
+			int blob = runs.runLabel[run]-1;
+			blobRuns[blobStart[blob]++] = run;
+		}
+		for (int blob = numBlobs; blob > 0; blob--) {
+			blobStart[blob] = blobStart[blob-1];
+		}
+		blobStart[0] = 0;
+	}
+
+	/**
+	 * Renders the blob into an image the size of its bounding box and traces its contours
+	 */
+	void trace( int blob , Workspace work ) {
+		final int offX = x0[blob], offY = y0[blob];
+		GrayU8 mask = work.mask;
+		mask.reshape(x1[blob]-offX,y1[blob]-offY);
+		Arrays.fill(mask.data,0,mask.width*mask.height,(byte)0);
+		for (int i = blobStart[blob]; i < blobStart[blob+1]; i++) {
+			int run = blobRuns[i];
+			int index = (runY[run]-offY)*mask.width - offX;
+			Arrays.fill(mask.data,index+runs.runX0[run],index+runs.runX1[run],(byte)1);
+		}
+
+		work.labeled.reshape(mask.width,mask.height);
+		work.finder.process(mask,work.labeled);
+
+		// there's only one blob in the mask
+		work.contours.add(work.finder.getPackedPoints(),work.finder.getContours().get(0),offX,offY);
+	}
+
+	static class Workspace {
+		LinearContourLabelChang2004 finder = new LinearContourLabelChang2004(ConnectRule.EIGHT);
+		GrayU8 mask = new GrayU8(1,1);
+		GrayS32 labeled = new GrayS32(1,1);
+		// contours of the blobs traced by this thread
+		SimplePackedContours contours = new SimplePackedContours();
+	}
+}
@@ -18,13 +18,16 @@
 
 package boofcv.processing;
 
+import boofcv.concurrency.BoofConcurrency;
 import georegression.struct.curve.EllipseRotated_F64;
 import georegression.struct.point.Point2D_I32;
-import processing.core.PConstants;
+import org.ddogleg.struct.FastQueue;
 import processing.core.PImage;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * List of {@link boofcv.processing.SimpleContour}
@@ -32,6 +35,13 @@ import java.util.List;
  * @author Peter Abeles
  */
 public class SimpleContourList {
+	/**
+	 * Lists with fewer contours than this are always processed using a single thread
+	 */
+	public static int minimumConcurrentContours = 20;
+	// number of contours a thread takes at once
+	static final int CHUNK = 8;
+
 	List<SimpleContour> contour = new ArrayList<SimpleContour>();
 	// input image width and height
 	int width,height;
@@ -43,7 +53,7 @@ public class SimpleContourList {
 	}
 
 	/**
-	 * Fits a polygon to the specified contour.
+	 * Fits a polygon to the specified contour.  Contours are processed in parallel when concurrency is turned on.
 	 *
 	 * @see boofcv.alg.shapes.ShapeFittingOps#fitPolygon
 	 *
@@ -53,17 +63,11 @@ public class SimpleContourList {
 	 * @return List of polygons described by their vertexes
 	 */
 	public List<List<Point2D_I32>> fitPolygons( boolean external , int minimumSideLength , double cornerPenalty ) {
-		List<List<Point2D_I32>> polygons = new ArrayList<>();
-
-		for (int i = 0; i < contour.size(); i++) {
-			polygons.addAll(contour.get(i).fitPolygon(external,minimumSideLength,cornerPenalty));
-		}
-
-		return polygons;
+		return fitAll((c,work,output)->c.fitPolygon(external,minimumSideLength,cornerPenalty,work,output));
 	}
 
 	/**
-	 * Fits ellipse(s) to the specified contour
+	 * Fits ellipse(s) to the specified contour.  Contours are processed in parallel when concurrency is turned on.
 	 *
 	 * @see boofcv.alg.shapes.ShapeFittingOps#fitEllipse_I32
 	 *
@@ -71,13 +75,85 @@ public class SimpleContourList {
 	 * @return List of found ellipses
 	 */
 	public List<EllipseRotated_F64> fitEllipses(boolean external ) {
-		List<EllipseRotated_F64> ellipses = new ArrayList<>();
+		return fitAll((c,work,output)->c.fitEllipses(external,work,output));
+	}
 
+	/**
+	 * Creates a new list with only the contours that have an external contour of the specified length and area.
+	 * Use this to remove contours before fitting shapes to them.
+	 *
+	 * @param minLength Minimum number of points in the external contour
+	 * @param maxLength Maximum number of points in the external contour
+	 * @param minArea Minimum area inside the external contour
+	 * @param maxArea Maximum area inside the external contour
+	 */
+	public SimpleContourList filter( int minLength , int maxLength , double minArea , double maxArea ) {
+		List<SimpleContour> kept = new ArrayList<>();
 		for (int i = 0; i < contour.size(); i++) {
-			ellipses.addAll(contour.get(i).fitEllipses(external));
+			SimpleContour c = contour.get(i);
+			int length = c.getExternalSize();
+			if( length < minLength || length > maxLength )
+				continue;
+			double area = c.getExternalArea();
+			if( area < minArea || area > maxArea )
+				continue;
+			kept.add(c);
 		}
+		return new SimpleContourList(kept,width,height);
+	}
 
-		return ellipses;
+	/**
+	 * Same as {@link #filter(int, int, double, double)} but with only lower limits
+	 */
+	public SimpleContourList filter( int minLength , double minArea ) {
+		return filter(minLength,Integer.MAX_VALUE,minArea,Double.MAX_VALUE);
+	}
+
+	/**
+	 * Fits shapes to every contour.  In parallel, threads take the next few contours until none are left and save
+	 * the results in their own storage.  Results are then combined in the same order as the contours.
+	 */
+	<T> List<T> fitAll( Fitter<T> fitter ) {
+		final int N = contour.size();
+		List<T> results = new ArrayList<>();
+
+		if( !BoofConcurrency.USE_CONCURRENT || N < minimumConcurrentContours ) {
+			FastQueue<Point2D_I32> work = new FastQueue<>(Point2D_I32::new);
+			for (int i = 0; i < N; i++) {
+				fitter.fit(contour.get(i),work,results);
+			}
+			return results;
+		}
+
+		// location of the results for each contour
+		Workspace[] owner = new Workspace[N];
+		int[] first = new int[N];
+		int[] count = new int[N];
+
+		AtomicInteger next = new AtomicInteger();
+		int numWorkers = Math.min(BoofConcurrency.getMaxThreads(),N);
+		FastQueue<Workspace> workspaces = new FastQueue<>(Workspace::new);
+		BoofConcurrency.loopBlocks(0,numWorkers,workspaces,(work,idx0,idx1)->{
+			List<T> found = work.results();
+			while( true ) {
+				int start = next.getAndAdd(CHUNK);
+				if( start >= N )
+					break;
+				int end = Math.min(N,start+CHUNK);
+				for (int i = start; i < end; i++) {
+					owner[i] = work;
+					first[i] = found.size();
+					fitter.fit(contour.get(i),work.points,found);
+					count[i] = found.size()-first[i];
+				}
+			}
+		});
+
+		for (int i = 0; i < N; i++) {
+			List<T> found = owner[i].results();
+			results.addAll(found.subList(first[i],first[i]+count[i]));
+		}
+		return results;
 	}
 
 	public int size(){
@@ -89,7 +165,8 @@ public class SimpleContourList {
 	}
 
 	public PImage visualize() {
-		PImage out = new PImage(width, height, PConstants.RGB);
+		PImage out = Boof.pool.newPImage(width, height);
+		Arrays.fill(out.pixels,0,width*height,0);
 
 		for( SimpleContour sc : contour ) {
 			sc.visualize(out,0xFFFF0000,0xFF00FF00);
@@ -97,4 +174,18 @@ public class SimpleContourList {
 
 		return out;
 	}
+
+	interface Fitter<T> {
+		void fit( SimpleContour contour , FastQueue<Point2D_I32> work , List<T> output );
+	}
+
+	static class Workspace {
+		FastQueue<Point2D_I32> points = new FastQueue<>(Point2D_I32::new);
+		List<Object> results = new ArrayList<>();
+
+		@SuppressWarnings("unchecked")
+		<T> List<T> results() {
+			return (List<T>)results;
+		}
+	}
 }
@@ -49,6 +49,16 @@ public class SimpleDenseOpticalFlow<T extends ImageBase<T>> {
 		return VisualizeProcessing.denseFlow(flow);
 	}
 
+	/**
+	 * Same as {@link #visualizeFlow()} but writes into the provided output.
+	 *
+	 * @param out Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public PImage visualizeFlow( PImage out ) {
+		return VisualizeProcessing.denseFlow(flow, out);
+	}
+
 	public DenseOpticalFlow<T> getFlowAlgorithm() {
 		return alg;
 	}
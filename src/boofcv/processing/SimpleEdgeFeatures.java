@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2011-2020, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.processing;
+
+import boofcv.alg.feature.detect.edge.GradientToEdgeFeatures;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.struct.image.GrayF32;
+import boofcv.struct.image.GrayS16;
+import boofcv.struct.image.GrayS8;
+import boofcv.struct.image.GrayU8;
+import boofcv.struct.image.ImageGray;
+
+/**
+ * Computes the Sobel gradient, edge intensity, and edge direction in a single pass over the image.  Each pixel's
+ * gradient is computed and immediately converted into edge features, so the gradient images are only saved
+ * if requested.  Rows are split into blocks which are processed in parallel.  Results are the same as
+ * {@link SimpleGray#gradientSobel()} followed by {@link SimpleGradient#intensityE()}, {@link SimpleGradient#direction()}
+ * and {@link GradientToEdgeFeatures#discretizeDirection4}.
+ *
+ * Outputs are saved internally and reused, so create one instance and use it on every image.
+ *
+ * @author Peter Abeles
+ */
+public class SimpleEdgeFeatures {
+	// true for Euclidean intensity and false for the sum of absolute values
+	boolean euclidean = true;
+	// which optional outputs are computed
+	boolean saveGradient = false;
+	boolean computeDirection = true;
+	boolean computeDirection4 = false;
+
+	// edge intensity
+	GrayF32 intensity = new GrayF32(1,1);
+	// edge direction from -pi/2 to pi/2
+	GrayF32 direction = new GrayF32(1,1);
+	// direction quantized into 4 values. -1, 0, 1, 2
+	GrayS8 direction4 = new GrayS8(1,1);
+	// gradient. GrayS16 for GrayU8 input and GrayF32 for GrayF32 input
+	SimpleGradient gradient;
+
+	/**
+	 * Computes the edge features from the image
+	 *
+	 * @return this
+	 */
+	public SimpleEdgeFeatures process( SimpleGray input ) {
+		ImageGray image = (ImageGray)input.image;
+		final int width = image.width, height = image.height;
+		intensity.reshape(width,height);
+		if( computeDirection )
+			direction.reshape(width,height);
+		if( computeDirection4 )
+			direction4.reshape(width,height);
+
+		if( image instanceof GrayU8 ) {
+			GrayU8 src = (GrayU8)image;
+			if( saveGradient && !(gradient != null && gradient.dx instanceof GrayS16) )
+				gradient = new SimpleGradient(new GrayS16(width,height),new GrayS16(width,height));
+			if( saveGradient ) {
+				((GrayS16)gradient.dx).reshape(width,height);
+				((GrayS16)gradient.dy).reshape(width,height);
+			}
+			if( ConvertProcessing.isConcurrent(width,height) ) {
+				BoofConcurrency.loopBlocks(0,height,(y0,y1)->process(src,y0,y1));
+			} else {
+				process(src,0,height);
+			}
+		} else if( image instanceof GrayF32 ) {
+			GrayF32 src = (GrayF32)image;
+			if( saveGradient && !(gradient != null && gradient.dx instanceof GrayF32) )
+				gradient = new SimpleGradient(new GrayF32(width,height),new GrayF32(width,height));
+			if( saveGradient ) {
+				((GrayF32)gradient.dx).reshape(width,height);
+				((GrayF32)gradient.dy).reshape(width,height);
+			}
+			if( ConvertProcessing.isConcurrent(width,height) ) {
+				BoofConcurrency.loopBlocks(0,height,(y0,y1)->process(src,y0,y1));
+			} else {
+				process(src,0,height);
+			}
+		} else {
+			throw new RuntimeException("Unsupported image type");
+		}
+		return this;
+	}
+
+	void process( GrayU8 src , int y0 , int y1 ) {
+		final int width = src.width, height = src.height;
+		GrayS16 dx = saveGradient ? (GrayS16)gradient.dx : null;
+		GrayS16 dy = saveGradient ? (GrayS16)gradient.dy : null;
+
+		for (int y = y0; y < y1; y++) {
+			// pixels outside the image are set to the closest pixel inside
+			int rowA = src.startIndex + Math.max(0,y-1)*src.stride;
+			int rowB = src.startIndex + y*src.stride;
+			int rowC = src.startIndex + Math.min(height-1,y+1)*src.stride;
+			int indexOut = y*width;
+
+			for (int x = 0; x < width; x++, indexOut++) {
+				int xl = x > 0 ? x-1 : 0;
+				int xr = x < width-1 ? x+1 : width-1;
+
+				int a0 = src.data[rowA+xl]&0xFF, a1 = src.data[rowA+x]&0xFF, a2 = src.data[rowA+xr]&0xFF;
+				int b0 = src.data[rowB+xl]&0xFF,                             b2 = src.data[rowB+xr]&0xFF;
+				int c0 = src.data[rowC+xl]&0xFF, c1 = src.data[rowC+x]&0xFF, c2 = src.data[rowC+xr]&0xFF;
+
+				int gx = (a2 + 2*b2 + c2) - (a0 + 2*b0 + c0);
+				int gy = (c0 + 2*c1 + c2) - (a0 + 2*a1 + a2);
+
+				if( dx != null ) {
+					dx.data[dx.startIndex + y*dx.stride + x] = (short)gx;
+					dy.data[dy.startIndex + y*dy.stride + x] = (short)gy;
+				}
+
+				intensity.data[indexOut] = euclidean ? (float)Math.sqrt(gx*gx + gy*gy) : Math.abs(gx) + Math.abs(gy);
+
+				if( computeDirection || computeDirection4 ) {
+					float angle = gx == 0 ? (float)(Math.PI/2.0) : (float)Math.atan(gy/(double)gx);
+					if( computeDirection )
+						direction.data[indexOut] = angle;
+					if( computeDirection4 )
+						direction4.data[indexOut] = discretize4(angle);
+				}
+			}
+		}
+	}
+
+	void process( GrayF32 src , int y0 , int y1 ) {
+		final int width = src.width, height = src.height;
+		GrayF32 dx = saveGradient ? (GrayF32)gradient.dx : null;
+		GrayF32 dy = saveGradient ? (GrayF32)gradient.dy : null;
+
+		for (int y = y0; y < y1; y++) {
+			// pixels outside the image are set to the closest pixel inside
+			int rowA = src.startIndex + Math.max(0,y-1)*src.stride;
+			int rowB = src.startIndex + y*src.stride;
+			int rowC = src.startIndex + Math.min(height-1,y+1)*src.stride;
+			int indexOut = y*width;
+
+			for (int x = 0; x < width; x++, indexOut++) {
+				int xl = x > 0 ? x-1 : 0;
+				int xr = x < width-1 ? x+1 : width-1;
+
+				float a0 = src.data[rowA+xl], a1 = src.data[rowA+x], a2 = src.data[rowA+xr];
+				float b0 = src.data[rowB+xl],                        b2 = src.data[rowB+xr];
+				float c0 = src.data[rowC+xl], c1 = src.data[rowC+x], c2 = src.data[rowC+xr];
+
+				// same order of operations as BoofCV so that the results are identical. It convolves a kernel
+				// along the border
+				float gx, gy;
+				if( x == 0 || y == 0 || x == width-1 || y == height-1 ) {
+					float b1 = src.data[rowB+x];
+					gx = a0*-0.25f + a1*0f + a2*0.25f + b0*-0.5f + b1*0f + b2*0.5f + c0*-0.25f + c1*0f + c2*0.25f;
+					gy = a0*-0.25f + a1*-0.5f + a2*-0.25f + b0*0f + b1*0f + b2*0f + c0*0.25f + c1*0.5f + c2*0.25f;
+				} else {
+					float w0 = (c2 - a0)*0.25f;
+					float w1 = (c0 - a2)*0.25f;
+					gx = (b2 - b0)*0.5f + w0 - w1;
+					gy = (c1 - a1)*0.5f + w0 + w1;
+				}
+
+				if( dx != null ) {
+					dx.data[dx.startIndex + y*dx.stride + x] = gx;
+					dy.data[dy.startIndex + y*dy.stride + x] = gy;
+				}
+
+				intensity.data[indexOut] = euclidean ? (float)Math.sqrt(gx*gx + gy*gy) : Math.abs(gx) + Math.abs(gy);
+
+				if( computeDirection || computeDirection4 ) {
+					float angle = Math.abs(gx) < 1e-10f ? (float)(Math.PI/2.0) : (float)Math.atan(gy/gx);
+					if( computeDirection )
+						direction.data[indexOut] = angle;
+					if( computeDirection4 )
+						direction4.data[indexOut] = discretize4(angle);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Same as {@link GradientToEdgeFeatures#discretizeDirection4} for a single angle
+	 */
+	static byte discretize4( float angle ) {
+		final float A = (float)(Math.PI/8.0);
+		final float D = (float)(Math.PI/4.0);
+		int d = angle >= 0 ? (int)((angle + A)/D) : (int)((angle - A)/D);
+		return (byte)(d == -2 ? 2 : d);
+	}
+
+	public SimpleGray getIntensity() {
+		return new SimpleGray(intensity);
+	}
+
+	/**
+	 * Edge direction from -pi/2 to pi/2.  Only valid if computeDirection is true
+	 */
+	public SimpleGray getDirection() {
+		return new SimpleGray(direction);
+	}
+
+	/**
+	 * Edge direction quantized into the values -1, 0, 1, 2.  Only valid if computeDirection4 is true
+	 */
+	public GrayS8 getDirection4() {
+		return direction4;
+	}
+
+	/**
+	 * Image gradient.  Only valid if saveGradient is true
+	 */
+	public SimpleGradient getGradient() {
+		return gradient;
+	}
+
+	public boolean isEuclidean() {
+		return euclidean;
+	}
+
+	/**
+	 * If true the intensity is the Euclidean norm of the gradient, otherwise the sum of absolute values.
+	 */
+	public SimpleEdgeFeatures setEuclidean( boolean euclidean ) {
+		this.euclidean = euclidean;
+		return this;
+	}
+
+	public boolean isSaveGradient() {
+		return saveGradient;
+	}
+
+	public SimpleEdgeFeatures setSaveGradient( boolean saveGradient ) {
+		this.saveGradient = saveGradient;
+		return this;
+	}
+
+	public boolean isComputeDirection() {
+		return computeDirection;
+	}
+
+	public SimpleEdgeFeatures setComputeDirection( boolean computeDirection ) {
+		this.computeDirection = computeDirection;
+		return this;
+	}
+
+	public boolean isComputeDirection4() {
+		return computeDirection4;
+	}
+
+	public SimpleEdgeFeatures setComputeDirection4( boolean computeDirection4 ) {
+		this.computeDirection4 = computeDirection4;
+		return this;
+	}
+}
@@ -20,6 +20,7 @@ package boofcv.processing;
 
 import boofcv.abst.fiducial.SquareImage_to_FiducialDetector;
 import boofcv.struct.image.GrayU8;
+import boofcv.struct.image.ImageType;
 import processing.core.PImage;
 
 /**
@@ -44,7 +45,7 @@ public class SimpleFiducialSquareImage extends SimpleFiducial {
 	 * @param targetLength Length of a fiducial's side in world units
 	 */
 	public void addTarget( PImage image , double targetLength ) {
-		GrayU8 gray = new GrayU8(image.width,image.height);
+		GrayU8 gray = Boof.pool.newImage(ImageType.single(GrayU8.class),image.width,image.height);
 		ConvertProcessing.convertFromRGB(image,gray);
 		detector.addPatternImage(gray, targetLength, 125);
 	}
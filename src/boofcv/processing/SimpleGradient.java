@@ -45,7 +45,7 @@ public class SimpleGradient<T extends ImageBase> {
 	 * @see GGradientToEdgeFeatures#intensityAbs
 	 */
 	public SimpleGray intensityAbs() {
-		GrayF32 intensity = new GrayF32(dx.width,dx.height);
+		GrayF32 intensity = Boof.pool.newImage(ImageType.single(GrayF32.class),dx.width,dx.height);
 		if( dx instanceof ImageGray ) {
 			GGradientToEdgeFeatures.intensityAbs((ImageGray)dx, (ImageGray)dy, intensity);
 		} else {
@@ -58,7 +58,7 @@ public class SimpleGradient<T extends ImageBase> {
 	 * @see GGradientToEdgeFeatures#intensityE
 	 */
 	public SimpleGray intensityE() {
-		GrayF32 intensity = new GrayF32(dx.width,dx.height);
+		GrayF32 intensity = Boof.pool.newImage(ImageType.single(GrayF32.class),dx.width,dx.height);
 		if( dx instanceof ImageGray ) {
 			GGradientToEdgeFeatures.intensityE((ImageGray) dx, (ImageGray) dy, intensity);
 		} else {
@@ -71,7 +71,7 @@ public class SimpleGradient<T extends ImageBase> {
 	 * @see GGradientToEdgeFeatures#direction
 	 */
 	public SimpleGray direction() {
-		GrayF32 intensity = new GrayF32(dx.width,dx.height);
+		GrayF32 intensity = Boof.pool.newImage(ImageType.single(GrayF32.class),dx.width,dx.height);
 		if( dx instanceof ImageGray ) {
 			GGradientToEdgeFeatures.direction((ImageGray) dx, (ImageGray) dy, intensity);
 		} else {
@@ -84,7 +84,7 @@ public class SimpleGradient<T extends ImageBase> {
 	 * @see GGradientToEdgeFeatures#direction2
 	 */
 	public SimpleGray direction2() {
-		GrayF32 intensity = new GrayF32(dx.width,dx.height);
+		GrayF32 intensity = Boof.pool.newImage(ImageType.single(GrayF32.class),dx.width,dx.height);
 		if( dx instanceof ImageGray ) {
 			GGradientToEdgeFeatures.direction2((ImageGray)dx, (ImageGray)dy, intensity);
 		} else {
@@ -94,10 +94,20 @@ public class SimpleGradient<T extends ImageBase> {
 	}
 
 	public PImage visualize() {
+		return visualize(Boof.pool.newPImage(dx.width, dx.height));
+	}
+
+	/**
+	 * Same as {@link #visualize()} but writes into the provided output.
+	 *
+	 * @param out Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public PImage visualize( PImage out ) {
 		if( dx instanceof GrayS16 ) {
-			return VisualizeProcessing.gradient((GrayS16) dx, (GrayS16) dy);
+			return VisualizeProcessing.gradient((GrayS16) dx, (GrayS16) dy, out);
 		} else if( dx instanceof GrayF32 ) {
-			return VisualizeProcessing.gradient((GrayF32) dx, (GrayF32) dy);
+			return VisualizeProcessing.gradient((GrayF32) dx, (GrayF32) dy, out);
 		} else {
 			throw new RuntimeException("Unknown image type");
 		}
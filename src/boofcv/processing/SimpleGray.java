@@ -18,39 +18,28 @@
 
 package boofcv.processing;
 
-import boofcv.abst.distort.FDistort;
-import boofcv.abst.feature.detect.line.DetectLine;
 import boofcv.abst.filter.derivative.ImageGradient;
-import boofcv.abst.geo.Estimate1ofEpipolar;
-import boofcv.alg.distort.PointToPixelTransform_F32;
-import boofcv.alg.distort.PointTransformHomography_F32;
 import boofcv.alg.enhance.EnhanceImageOps;
 import boofcv.alg.enhance.GEnhanceImageOps;
 import boofcv.alg.filter.binary.GThresholdImageOps;
 import boofcv.alg.filter.blur.GBlurImageOps;
-import boofcv.alg.filter.derivative.GImageDerivativeOps;
 import boofcv.alg.misc.GImageStatistics;
 import boofcv.alg.misc.ImageStatistics;
+import boofcv.concurrency.WorkArrays;
 import boofcv.core.image.GConvertImage;
+import boofcv.core.image.GeneralizedImageOps;
 import boofcv.factory.feature.detect.line.*;
+import boofcv.factory.filter.binary.ThresholdType;
 import boofcv.factory.filter.derivative.FactoryDerivative;
-import boofcv.factory.geo.FactoryMultiView;
 import boofcv.struct.ConfigLength;
-import boofcv.struct.border.BorderType;
-import boofcv.struct.geo.AssociatedPair;
 import boofcv.struct.image.GrayF32;
 import boofcv.struct.image.GrayI;
 import boofcv.struct.image.GrayU8;
 import boofcv.struct.image.ImageGray;
+import boofcv.struct.image.ImageType;
 import georegression.struct.line.LineParametric2D_F32;
-import georegression.struct.point.Point2D_F64;
-import org.ejml.data.DMatrixRMaj;
-import org.ejml.data.FMatrixRMaj;
-import org.ejml.ops.ConvertMatrixData;
-import processing.core.PConstants;
 import processing.core.PImage;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -61,16 +50,52 @@ import java.util.List;
 @SuppressWarnings("unchecked")
 public class SimpleGray<Gray extends ImageGray<Gray>> extends SimpleImage<Gray>{
 
+	// Work space used by operations which write into this image
+	Gray work;
+
+	// Integral images of this image which are shared by local thresholds
+	SimpleIntegralImage integral;
+	boolean integralValid = false;
+
+	// Work space used by thresholds. Created when first used
+	SimpleThresholdGlobal thresholdOtsu, thresholdEntropy;
+	Gray thresholdWork1, thresholdWork2;
+	WorkArrays thresholdWorkArrays;
+
 	public SimpleGray(Gray image) {
 		super(image);
 	}
 
+	/**
+	 * Creates a pipeline which records operations on this image and runs them together in a single pass
+	 * when the results are requested.
+	 *
+	 * @see SimplePipeline
+	 */
+	public SimplePipeline pipeline() {
+		return new SimplePipeline(image,false);
+	}
+
 	public SimpleGray blurMean( int radius ) {
-		return new SimpleGray((Gray)GBlurImageOps.mean(image, null, radius, null, null));
+		return blurMean(radius, newGray());
+	}
+
+	/**
+	 * Same as {@link #blurMean(int)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleGray blurMean( int radius , SimpleGray output ) {
+		Gray out = output(output);
+		GBlurImageOps.mean(image, out, radius, output.work(image), null);
+		return output;
 	}
 
 	public SimpleGray blurMedian( int radius ) {
-		return new SimpleGray((Gray)GBlurImageOps.median(image, null, radius, null));
+		Gray output = newImage();
+		GBlurImageOps.median(image, output, radius, null);
+		return new SimpleGray(output);
 	}
 
 	/**
@@ -83,7 +108,7 @@ public class SimpleGray<Gray extends ImageGray<Gray>> extends SimpleImage<Gray>{
 		if (!(image instanceof GrayU8))
 			throw new RuntimeException("Image must be of type GrayU8 to adjust its histogram");
 
-		GrayU8 adjusted = new GrayU8(image.width, image.height);
+		GrayU8 adjusted = Boof.pool.newImage(ImageType.single(GrayU8.class), image.width, image.height);
 
 		int histogram[] = new int[256];
 		int transform[] = new int[256];
@@ -105,7 +130,7 @@ public class SimpleGray<Gray extends ImageGray<Gray>> extends SimpleImage<Gray>{
 		if (!(image instanceof GrayU8))
 			throw new RuntimeException("Image must be of type GrayU8 to adjust its histogram");
 
-		GrayU8 adjusted = new GrayU8(image.width, image.height);
+		GrayU8 adjusted = Boof.pool.newImage(ImageType.single(GrayU8.class), image.width, image.height);
 		EnhanceImageOps.equalizeLocal((GrayU8) image, radius, adjusted, 256, null);
 
 		return new SimpleGray(adjusted);
@@ -122,7 +147,7 @@ public class SimpleGray<Gray extends ImageGray<Gray>> extends SimpleImage<Gray>{
 		if (!(image instanceof GrayU8))
 			throw new RuntimeException("Image must be of type GrayU8 to adjust its histogram");
 
-		Gray adjusted = image.createNew(image.width, image.height);
+		Gray adjusted = newImage();
 		GEnhanceImageOps.sharpen4(image, adjusted);
 
 		return new SimpleGray(adjusted);
@@ -139,35 +164,39 @@ public class SimpleGray<Gray extends ImageGray<Gray>> extends SimpleImage<Gray>{
 		if (!(image instanceof GrayU8))
 			throw new RuntimeException("Image must be of type GrayU8 to adjust its histogram");
 
-		Gray adjusted = image.createNew(image.width, image.height);
+		Gray adjusted = newImage();
 		GEnhanceImageOps.sharpen8(image, adjusted);
 
 		return new SimpleGray(adjusted);
 	}
 
+	/**
+	 * Detects lines using a Hough polar detector.  To process a sequence of images efficiently use
+	 * {@link Boof#linesHoughPolar} instead, which creates the detector once.
+	 */
 	public List<LineParametric2D_F32> linesHoughPolar(ConfigHoughGradient configHough, ConfigParamPolar configPolar) {
-		Class inputType = image.getClass();
-		Class derivType = GImageDerivativeOps.getDerivativeType(inputType);
-		DetectLine detector = FactoryDetectLine.houghLinePolar(configHough,configPolar,derivType);
-		return detector.detect(image);
+		return Boof.linesHoughPolar(configHough,configPolar,image.getDataType()).detect(this);
 	}
 
+	/**
+	 * Detects lines using a Hough foot of norm detector.  To process a sequence of images efficiently use
+	 * {@link Boof#linesHoughFoot} instead, which creates the detector once.
+	 */
 	public List<LineParametric2D_F32> linesHoughFoot(ConfigHoughGradient configHough, ConfigParamFoot configFoot) {
-		Class inputType = image.getClass();
-		Class derivType = GImageDerivativeOps.getDerivativeType(inputType);
-		DetectLine detector = FactoryDetectLine.houghLineFoot(configHough, configFoot, derivType);
-		return detector.detect(image);
+		return Boof.linesHoughFoot(configHough,configFoot,image.getDataType()).detect(this);
 	}
 
+	/**
+	 * Detects lines using a Hough foot of norm detector in sub-images.  To process a sequence of images
+	 * efficiently use {@link Boof#linesHoughFootSub} instead, which creates the detector once.
+	 */
 	public List<LineParametric2D_F32> linesHoughFootSub(ConfigHoughFootSubimage configFoot ) {
-		Class inputType = image.getClass();
-		Class derivType = GImageDerivativeOps.getDerivativeType(inputType);
-		DetectLine detector = FactoryDetectLine.houghLineFootSub(configFoot,derivType);
-		return detector.detect(image);
+		return Boof.linesHoughFootSub(configFoot,image.getDataType()).detect(this);
 	}
 
 	/**
-	 * Removes perspective distortion.  4 points must be in 'this' image must be in clockwise order.
+	 * Removes perspective distortion.  4 points must be in 'this' image must be in clockwise order.  To process
+	 * a sequence of images efficiently use {@link Boof#removePerspective} instead, which caches the lookup table.
 	 *
 	 * @param outWidth Width of output image
 	 * @param outHeight Height of output image
@@ -179,103 +208,202 @@ public class SimpleGray<Gray extends ImageGray<Gray>> extends SimpleImage<Gray>{
 										 double x2, double y2,
 										 double x3, double y3 )
 	{
-		Gray output = image.createNew(outWidth,outHeight);
-
-		// Homography estimation algorithm.  Requires a minimum of 4 points
-		Estimate1ofEpipolar computeHomography = FactoryMultiView.homographyDLT(true);
-
-		// Specify the pixel coordinates from destination to target
-		ArrayList<AssociatedPair> associatedPairs = new ArrayList<AssociatedPair>();
-		associatedPairs.add(new AssociatedPair(new Point2D_F64(0,0),new Point2D_F64(x0,y0)));
-		associatedPairs.add(new AssociatedPair(new Point2D_F64(outWidth-1,0),new Point2D_F64(x1,y1)));
-		associatedPairs.add(new AssociatedPair(new Point2D_F64(outWidth-1,outHeight-1),new Point2D_F64(x2,y2)));
-		associatedPairs.add(new AssociatedPair(new Point2D_F64(0,outHeight-1),new Point2D_F64(x3,y3)));
-
-		// Compute the homography
-		DMatrixRMaj H = new DMatrixRMaj(3,3);
-		computeHomography.process(associatedPairs, H);
-		FMatrixRMaj H32 = new FMatrixRMaj(3,3);
-		ConvertMatrixData.convert(H,H32);
-
-		// Create the transform for distorting the image
-		PointTransformHomography_F32 homography = new PointTransformHomography_F32(H32);
-
-		// Apply distortion and show the results
-		new FDistort(image,output).transform(new PointToPixelTransform_F32(homography)).border(BorderType.SKIP).apply();
-
-		return new SimpleGray(output);
+		RemovePerspective alg = new RemovePerspective(outWidth,outHeight);
+		alg.setCorners(x0,y0,x1,y1,x2,y2,x3,y3);
+		return alg.apply(this);
 	}
 
 	/**
 	 * @see GBlurImageOps#gaussian
 	 */
 	public SimpleGray blurGaussian( double sigma, int radius ) {
-		return new SimpleGray((Gray)GBlurImageOps.gaussian(image, null, sigma, radius, null));
+		return blurGaussian(sigma, radius, newGray());
+	}
+
+	/**
+	 * Same as {@link #blurGaussian(double, int)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleGray blurGaussian( double sigma, int radius , SimpleGray output ) {
+		Gray out = output(output);
+		GBlurImageOps.gaussian(image, out, sigma, radius, output.work(image));
+		return output;
 	}
 
 	/**
 	 * @see GThresholdImageOps#threshold
 	 */
 	public SimpleBinary threshold(double threshold, boolean down ) {
-		return new SimpleBinary(GThresholdImageOps.threshold(image, null, threshold, down));
+		return threshold(threshold, down, newBinary());
+	}
+
+	/**
+	 * Same as {@link #threshold(double, boolean)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary threshold(double threshold, boolean down , SimpleBinary output ) {
+		GThresholdImageOps.threshold(image, output(output), threshold, down);
+		return output;
 	}
 
 	/**
 	 * @see GThresholdImageOps#computeOtsu
+	 * @see SimpleThresholdGlobal
 	 */
 	public SimpleBinary thresholdOtsu(boolean down ) {
-		double threshold = GThresholdImageOps.computeOtsu(image,0,255);
-		return new SimpleBinary(GThresholdImageOps.threshold(image, null, threshold, down));
+		return thresholdOtsu(down, newBinary());
+	}
+
+	/**
+	 * Same as {@link #thresholdOtsu(boolean)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary thresholdOtsu(boolean down , SimpleBinary output ) {
+		if( thresholdOtsu == null )
+			thresholdOtsu = new SimpleThresholdGlobal(ThresholdType.GLOBAL_OTSU,down);
+		thresholdOtsu.setDown(down);
+		return thresholdOtsu.process(this,output);
 	}
 
 	/**
 	 * @see GThresholdImageOps#computeEntropy
+	 * @see SimpleThresholdGlobal
 	 */
 	public SimpleBinary thresholdEntropy(boolean down ) {
-		double threshold = GThresholdImageOps.computeEntropy(image,0,255);
-		return new SimpleBinary(GThresholdImageOps.threshold(image, null, threshold, down));
+		return thresholdEntropy(down, newBinary());
+	}
+
+	/**
+	 * Same as {@link #thresholdEntropy(boolean)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary thresholdEntropy(boolean down , SimpleBinary output ) {
+		if( thresholdEntropy == null )
+			thresholdEntropy = new SimpleThresholdGlobal(ThresholdType.GLOBAL_ENTROPY,down);
+		thresholdEntropy.setDown(down);
+		return thresholdEntropy.process(this,output);
 	}
 
 	/**
 	 * @see GThresholdImageOps#localMean
+	 * @see #thresholdMeanIntegral(int, double, boolean)
 	 */
 	public SimpleBinary thresholdMean( int width, double bias, boolean down ) {
+		return thresholdMean(width, bias, down, newBinary());
+	}
+
+	/**
+	 * Same as {@link #thresholdMean(int, double, boolean)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary thresholdMean( int width, double bias, boolean down , SimpleBinary output ) {
 		ConfigLength config = new ConfigLength();
 		config.length = width;
-		return new SimpleBinary(GThresholdImageOps.localMean(image, null, config, bias, down, null,null, null));
+		declareThresholdWork();
+		if( thresholdWorkArrays == null )
+			thresholdWorkArrays = GeneralizedImageOps.createWorkArray(image.getImageType());
+		GThresholdImageOps.localMean(image, output(output), config, bias, down,
+				thresholdWork1, thresholdWork2, thresholdWorkArrays);
+		return output;
+	}
+
+	/**
+	 * Same as {@link #thresholdMean(int, double, boolean)} but the local mean is found using the integral
+	 * image, so the cost doesn't depend on the width and is shared with other thresholds applied to this image.
+	 * The local mean is computed differently, so a small fraction of pixels which are next to the threshold can
+	 * be different.  For integer images the mean is rounded once instead of after each blur pass, which affects
+	 * roughly 0.1% to 0.3% of pixels, and for floating point images only round off error differs.
+	 *
+	 * @see #integral()
+	 */
+	public SimpleBinary thresholdMeanIntegral( int width, double bias, boolean down ) {
+		return thresholdMeanIntegral(width, bias, down, newBinary());
+	}
+
+	/**
+	 * Same as {@link #thresholdMeanIntegral(int, double, boolean)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary thresholdMeanIntegral( int width, double bias, boolean down , SimpleBinary output ) {
+		integral().thresholdMean(image, width/2, (float)bias, down, output(output));
+		return output;
 	}
 
 	/**
 	 * @see GThresholdImageOps#localGaussian
 	 */
 	public SimpleBinary thresholdGaussian( int Width, double bias, boolean down ) {
+		return thresholdGaussian(Width, bias, down, newBinary());
+	}
+
+	/**
+	 * Same as {@link #thresholdGaussian(int, double, boolean)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary thresholdGaussian( int Width, double bias, boolean down , SimpleBinary output ) {
 		ConfigLength config = new ConfigLength();
 		config.length = Width;
-		return new SimpleBinary(GThresholdImageOps.localGaussian(image, null, config, bias, down, null, null));
+		declareThresholdWork();
+		GThresholdImageOps.localGaussian(image, output(output), config, bias, down, thresholdWork1, thresholdWork2);
+		return output;
 	}
 
 	/**
 	 * @see GThresholdImageOps#localSauvola
+	 * @see #integral()
 	 *
 	 * @param width Width of the adaptive region
 	 * @param k Positive parameter used to tune threshold.  Try 0.3
 	 */
 	public SimpleBinary thresholdSauvola( int width, double k , boolean down ) {
-		ConfigLength config = new ConfigLength();
-		config.length = width;
-		return new SimpleBinary(GThresholdImageOps.localSauvola(image, null, config, (float) k, down));
+		return thresholdSauvola(width, k, down, newBinary());
+	}
+
+	/**
+	 * Same as {@link #thresholdSauvola(int, double, boolean)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary thresholdSauvola( int width, double k , boolean down , SimpleBinary output ) {
+		integral().thresholdSauvola(image, width/2, (float) k, down, output(output));
+		return output;
 	}
 
 	/**
 	 * @see GThresholdImageOps#localNick
+	 * @see #integral()
 	 *
 	 * @param width Width of the adaptive region
 	 * @param k Positive parameter used to tune threshold.  Try -0.1 to -0.2
 	 */
 	public SimpleBinary thresholdNick( int width, double k , boolean down ) {
-		ConfigLength config = new ConfigLength();
-		config.length = width;
-		return new SimpleBinary(GThresholdImageOps.localNick(image, null, config, (float) k, down));
+		return thresholdNick(width, k, down, newBinary());
+	}
+
+	/**
+	 * Same as {@link #thresholdNick(int, double, boolean)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary thresholdNick( int width, double k , boolean down , SimpleBinary output ) {
+		integral().thresholdNick(image, width/2, (float) k, down, output(output));
+		return output;
 	}
 
 	/**
@@ -287,9 +415,20 @@ public class SimpleGray<Gray extends ImageGray<Gray>> extends SimpleImage<Gray>{
 	 * @param down Should it threshold up or down.
 	 */
 	public SimpleBinary thresholdBlockMean( int width, double scale , boolean down ) {
+		return thresholdBlockMean(width, scale, down, newBinary());
+	}
+
+	/**
+	 * Same as {@link #thresholdBlockMean(int, double, boolean)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary thresholdBlockMean( int width, double scale , boolean down , SimpleBinary output ) {
 		ConfigLength config = new ConfigLength();
 		config.length = width;
-		return new SimpleBinary(GThresholdImageOps.blockMean(image, null, config, scale, down));
+		GThresholdImageOps.blockMean(image, output(output), config, scale, down);
+		return output;
 	}
 
 	/**
@@ -302,9 +441,21 @@ public class SimpleGray<Gray extends ImageGray<Gray>> extends SimpleImage<Gray>{
 	 * @param textureThreshold If the min and max values are within this threshold the pixel will be set to 1.
 	 */
 	public SimpleBinary thresholdBlockMinMax( int width, double scale , boolean down , double textureThreshold ) {
+		return thresholdBlockMinMax(width, scale, down, textureThreshold, newBinary());
+	}
+
+	/**
+	 * Same as {@link #thresholdBlockMinMax(int, double, boolean, double)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary thresholdBlockMinMax( int width, double scale , boolean down , double textureThreshold ,
+											  SimpleBinary output ) {
 		ConfigLength config = new ConfigLength();
 		config.length = width;
-		return new SimpleBinary(GThresholdImageOps.blockMinMax(image, null, config, scale, down, textureThreshold));
+		GThresholdImageOps.blockMinMax(image, output(output), config, scale, down, textureThreshold);
+		return output;
 	}
 
 	/**
@@ -316,15 +467,46 @@ public class SimpleGray<Gray extends ImageGray<Gray>> extends SimpleImage<Gray>{
 	 * @param down Should it threshold up or down.
 	 */
 	public SimpleBinary thresholdBlockOtsu( int width, double scale , boolean down ) {
+		return thresholdBlockOtsu(width, scale, down, newBinary());
+	}
+
+	/**
+	 * Same as {@link #thresholdBlockOtsu(int, double, boolean)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary thresholdBlockOtsu( int width, double scale , boolean down , SimpleBinary output ) {
 		ConfigLength config = new ConfigLength();
 		config.length = width;
-		return new SimpleBinary(GThresholdImageOps.blockOtsu(image, null, false,config,0, scale, down));
+		GThresholdImageOps.blockOtsu(image, output(output), false,config,0, scale, down);
+		return output;
 	}
 
 	public SimpleGradient gradientSobel() {
 		return gradient(FactoryDerivative.sobel(image.getClass(), null));
 	}
 
+	/**
+	 * Computes the Sobel gradient's intensity and direction in a single pass without saving the gradient.
+	 *
+	 * @see SimpleEdgeFeatures
+	 */
+	public SimpleEdgeFeatures edgeFeatures() {
+		return edgeFeatures(new SimpleEdgeFeatures());
+	}
+
+	/**
+	 * Same as {@link #edgeFeatures()} but writes into the provided output, which can be reused between images
+	 * and specifies which features are computed.
+	 *
+	 * @param output Storage for the results.
+	 * @return The output
+	 */
+	public SimpleEdgeFeatures edgeFeatures( SimpleEdgeFeatures output ) {
+		return output.process(this);
+	}
+
 	public SimpleGradient gradientPrewitt() {
 		return gradient(FactoryDerivative.prewitt(image.getClass(), null));
 	}
@@ -369,27 +551,70 @@ public class SimpleGray<Gray extends ImageGray<Gray>> extends SimpleImage<Gray>{
 		return GImageStatistics.sum(image);
 	}
 
+	/**
+	 * Computes min, max, sum, mean, variance, and a histogram in a single pass.  When several statistics
+	 * are needed this is much faster than calling {@link #mean()}, {@link #max()}, etc individually.
+	 *
+	 * @see SimpleStatistics
+	 */
+	public SimpleStatistics statistics() {
+		return statistics(new SimpleStatistics());
+	}
+
+	/**
+	 * Same as {@link #statistics()} but writes into the provided output, which can be reused between images.
+	 *
+	 * @param output Storage for the results.
+	 * @return The output
+	 */
+	public SimpleStatistics statistics( SimpleStatistics output ) {
+		return output.process(this);
+	}
+
 	private SimpleGradient gradient(ImageGradient gradient) {
-		SimpleGradient ret = new SimpleGradient(gradient.getDerivativeType(),image.width,image.height);
+		ImageType derivType = gradient.getDerivativeType();
+		SimpleGradient ret = new SimpleGradient(
+				Boof.pool.newImage(derivType,image.width,image.height),
+				Boof.pool.newImage(derivType,image.width,image.height));
 		gradient.process(image,ret.dx,ret.dy);
 
 		return ret;
 	}
 
 	public PImage visualizeSign() {
+		return visualizeSign(Boof.pool.newPImage(image.width,image.height));
+	}
+
+	/**
+	 * Same as {@link #visualizeSign()} but writes into the provided output.
+	 *
+	 * @param out Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public PImage visualizeSign( PImage out ) {
 		if( image instanceof GrayF32) {
 			float max = ImageStatistics.maxAbs((GrayF32) image);
-			return VisualizeProcessing.colorizeSign((GrayF32)image,max);
+			return VisualizeProcessing.colorizeSign((GrayF32)image,max,out);
 		} else if( image instanceof GrayI) {
 			int max = (int)GImageStatistics.maxAbs(image);
-			return VisualizeProcessing.colorizeSign((GrayI) image, max);
+			return VisualizeProcessing.colorizeSign((GrayI) image, max, out);
 		} else {
 			throw new RuntimeException("Unknown image type");
 		}
 	}
 
 	public PImage convert() {
-		PImage out = new PImage(image.width,image.height, PConstants.RGB);
+		return convert(Boof.pool.newPImage(image.width,image.height));
+	}
+
+	/**
+	 * Same as {@link #convert()} but writes into the provided output.
+	 *
+	 * @param out Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public PImage convert( PImage out ) {
+		ConvertProcessing.reshape(out,image.width,image.height);
 		if( image instanceof GrayF32) {
 			ConvertProcessing.convert_F32_RGB((GrayF32)image,out);
 		} else if( image instanceof GrayU8 ) {
@@ -400,6 +625,90 @@ public class SimpleGray<Gray extends ImageGray<Gray>> extends SimpleImage<Gray>{
 		return out;
 	}
 
+	/**
+	 * Makes sure the output contains an image of the same type and shape as this image.  Memory is only
+	 * allocated if the type doesn't match or the shape grows.
+	 */
+	Gray output( SimpleGray output ) {
+		output.invalidateCache();
+		if( output.image == null || output.image.getClass() != image.getClass() ) {
+			output.image = image.createNew(image.width,image.height);
+			output.work = null;
+		} else {
+			output.image.reshape(image.width,image.height);
+		}
+		return (Gray)output.image;
+	}
+
+	/**
+	 * Makes sure the binary output is the same shape as this image
+	 */
+	GrayU8 output( SimpleBinary output ) {
+		output.image.reshape(image.width,image.height);
+		return output.image;
+	}
+
+	/**
+	 * Returns work space of the same type as the input image. Created the first time it's needed.
+	 */
+	Gray work( Gray input ) {
+		if( work == null || work.getClass() != input.getClass() ) {
+			work = input.createNew(input.width,input.height);
+		} else {
+			work.reshape(input.width,input.height);
+		}
+		return work;
+	}
+
+	/**
+	 * Makes sure the work space used by local thresholds is the same type and shape as this image. Created the
+	 * first time it's needed.
+	 */
+	void declareThresholdWork() {
+		if( thresholdWork1 == null || thresholdWork1.getClass() != image.getClass() ) {
+			thresholdWork1 = image.createNew(image.width,image.height);
+			thresholdWork2 = image.createNew(image.width,image.height);
+			thresholdWorkArrays = null;
+		} else {
+			thresholdWork1.reshape(image.width,image.height);
+			thresholdWork2.reshape(image.width,image.height);
+		}
+	}
+
+	/**
+	 * Returns integral images of this image.  They are computed the first time they are needed and then
+	 * shared by all the local thresholds which are applied to this image.
+	 */
+	public SimpleIntegralImage integral() {
+		if( integral == null )
+			integral = new SimpleIntegralImage();
+		if( !integralValid ) {
+			integral.process(image);
+			integralValid = true;
+		}
+		return integral;
+	}
+
+	/**
+	 * Discards cached information which was computed from the pixels, e.g. the integral image.  Must be
+	 * called if the image is modified outside of this library.
+	 */
+	public void invalidateCache() {
+		integralValid = false;
+	}
+
+	private Gray newImage() {
+		return Boof.pool.newImage(image.getImageType(),image.width,image.height);
+	}
+
+	private SimpleGray newGray() {
+		return new SimpleGray(newImage());
+	}
+
+	private SimpleBinary newBinary() {
+		return new SimpleBinary(Boof.pool.newImage(ImageType.single(GrayU8.class),image.width,image.height));
+	}
+
 	/**
 	 * Converts the internal image type into {@link GrayF32}.
 	 */
@@ -410,6 +719,7 @@ public class SimpleGray<Gray extends ImageGray<Gray>> extends SimpleImage<Gray>{
 		GrayF32 a = new GrayF32(image.width,image.height);
 		GConvertImage.convert(image,a);
 		image = (Gray)a;
+		invalidateCache();
 	}
 
 	/**
@@ -422,5 +732,6 @@ public class SimpleGray<Gray extends ImageGray<Gray>> extends SimpleImage<Gray>{
 		GrayU8 a = new GrayU8(image.width,image.height);
 		GConvertImage.convert(image,a);
 		image = (Gray)a;
+		invalidateCache();
 	}
 }
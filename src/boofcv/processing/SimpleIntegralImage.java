@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2011-2020, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.processing;
+
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.struct.image.GrayF32;
+import boofcv.struct.image.GrayU8;
+import boofcv.struct.image.ImageGray;
+
+/**
+ * Integral images of pixel values and squared pixel values.  Once computed, the sum, mean, and variance
+ * inside any rectangle can be found in constant time.  Used by {@link SimpleGray} to share the expensive
+ * part of local thresholds, which is then independent of the region's size.
+ *
+ * Integral images have an extra row and column of zeros at the top and left so that no special case
+ * is needed along the image border.
+ *
+ * @author Peter Abeles
+ */
+public class SimpleIntegralImage {
+	// shape of the input image
+	int width, height;
+
+	// sum of all pixels above and to the left. (width+1)*(height+1)
+	double[] sum = new double[0];
+	double[] sumSq = new double[0];
+
+	// storage for the maximum along each row
+	float[] rowMax = new float[0];
+
+	/**
+	 * Computes the integral images
+	 */
+	public void process( ImageGray image ) {
+		this.width = image.width;
+		this.height = image.height;
+		int N = (width+1)*(height+1);
+		if( sum.length < N ) {
+			sum = new double[N];
+			sumSq = new double[N];
+		}
+		final int stride = width+1;
+		for (int x = 0; x < stride; x++) {
+			sum[x] = sumSq[x] = 0;
+		}
+
+		// first the sum along each row, then along each column.
+		if( ConvertProcessing.isConcurrent(width,height) ) {
+			BoofConcurrency.loopBlocks(0,height,(y0,y1)->rows(image,y0,y1));
+			BoofConcurrency.loopBlocks(1,stride,(x0,x1)->columns(x0,x1));
+		} else {
+			rows(image,0,height);
+			columns(1,stride);
+		}
+	}
+
+	void rows( ImageGray image , int y0 , int y1 ) {
+		final int stride = width+1;
+		for (int y = y0; y < y1; y++) {
+			int indexOut = (y+1)*stride;
+			sum[indexOut] = sumSq[indexOut] = 0;
+			double total = 0, totalSq = 0;
+
+			if( image instanceof GrayU8 ) {
+				GrayU8 in = (GrayU8)image;
+				int indexIn = in.startIndex + y*in.stride;
+				for (int x = 0; x < width; x++) {
+					int value = in.data[indexIn++] & 0xFF;
+					total += value;
+					totalSq += value*value;
+					sum[++indexOut] = total;
+					sumSq[indexOut] = totalSq;
+				}
+			} else if( image instanceof GrayF32 ) {
+				GrayF32 in = (GrayF32)image;
+				int indexIn = in.startIndex + y*in.stride;
+				for (int x = 0; x < width; x++) {
+					double value = in.data[indexIn++];
+					total += value;
+					totalSq += value*value;
+					sum[++indexOut] = total;
+					sumSq[indexOut] = totalSq;
+				}
+			} else {
+				throw new RuntimeException("Unknown image type");
+			}
+		}
+	}
+
+	void columns( int x0 , int x1 ) {
+		final int stride = width+1;
+		for (int y = 2; y <= height; y++) {
+			int index = y*stride + x0;
+			int end = y*stride + x1;
+			for (; index < end; index++) {
+				sum[index] += sum[index-stride];
+				sumSq[index] += sumSq[index-stride];
+			}
+		}
+	}
+
+	/**
+	 * Sum of pixel values inside the rectangle. Lower extents are inclusive and upper extents exclusive.
+	 * Must be inside the image.
+	 */
+	public double sum( int x0 , int y0 , int x1 , int y1 ) {
+		return block(sum,x0,y0,x1,y1);
+	}
+
+	/**
+	 * Sum of squared pixel values inside the rectangle. Lower extents are inclusive and upper extents exclusive.
+	 * Must be inside the image.
+	 */
+	public double sumSq( int x0 , int y0 , int x1 , int y1 ) {
+		return block(sumSq,x0,y0,x1,y1);
+	}
+
+	/**
+	 * Mean of the square region centered at (x,y) with the specified radius.  Only pixels inside the
+	 * image are included.
+	 */
+	public double mean( int x , int y , int radius ) {
+		int x0 = Math.max(0,x-radius), x1 = Math.min(width,x+radius+1);
+		int y0 = Math.max(0,y-radius), y1 = Math.min(height,y+radius+1);
+		return sum(x0,y0,x1,y1)/((x1-x0)*(y1-y0));
+	}
+
+	/**
+	 * Variance of the square region centered at (x,y) with the specified radius.  Only pixels inside the
+	 * image are included.
+	 */
+	public double variance( int x , int y , int radius ) {
+		int x0 = Math.max(0,x-radius), x1 = Math.min(width,x+radius+1);
+		int y0 = Math.max(0,y-radius), y1 = Math.min(height,y+radius+1);
+		int N = (x1-x0)*(y1-y0);
+		double mean = sum(x0,y0,x1,y1)/N;
+		return Math.max(0,sumSq(x0,y0,x1,y1)/N - mean*mean);
+	}
+
+	final double block( double[] data , int x0 , int y0 , int x1 , int y1 ) {
+		final int stride = width+1;
+		return data[y1*stride+x1] - data[y0*stride+x1] - data[y1*stride+x0] + data[y0*stride+x0];
+	}
+
+	/**
+	 * Same as {@link boofcv.alg.filter.binary.GThresholdImageOps#localMean} but uses the integral image
+	 */
+	void thresholdMean( ImageGray input , int radius , float scale , boolean down , GrayU8 output ) {
+		// the mean of an integer image is an integer
+		final boolean round = input instanceof GrayU8;
+		process(input,output,radius,(value,mean,meanSq)->{
+			if( round )
+				mean = (int)(mean + 0.5f);
+			return down ? value <= mean*scale : value*scale > mean;
+		});
+	}
+
+	/**
+	 * Same as {@link boofcv.alg.filter.binary.GThresholdImageOps#localSauvola} but uses the integral image
+	 */
+	void thresholdSauvola( ImageGray input , int radius , float k , boolean down , GrayU8 output ) {
+		// dynamic range of the standard deviation
+		if( rowMax.length < height )
+			rowMax = new float[height];
+		if( ConvertProcessing.isConcurrent(width,height) ) {
+			BoofConcurrency.loopBlocks(0,height,(y0,y1)->maxStdev(radius,y0,y1));
+		} else {
+			maxStdev(radius,0,height);
+		}
+		float R = 0;
+		for (int y = 0; y < height; y++) {
+			R = Math.max(R,rowMax[y]);
+		}
+		final float maxStdev = R;
+
+		process(input,output,radius,(value,mean,meanSq)->{
+			float stdev = (float)Math.sqrt(Math.max(0,meanSq - mean*mean));
+			float threshold = mean*(1.0f + k*(stdev/maxStdev - 1.0f));
+			return down ? value <= threshold : value >= threshold;
+		});
+	}
+
+	/**
+	 * Same as {@link boofcv.alg.filter.binary.GThresholdImageOps#localNick} but uses the integral image
+	 */
+	void thresholdNick( ImageGray input , int radius , float k , boolean down , GrayU8 output ) {
+		final float NP = (radius*2+1)*(radius*2+1);
+		process(input,output,radius,(value,mean,meanSq)->{
+			float b = meanSq - mean*mean/NP;
+			float threshold = mean + k*(float)Math.sqrt(b);
+			return down ? value <= threshold : value >= threshold;
+		});
+	}
+
+	void maxStdev( int radius , int y0 , int y1 ) {
+		for (int y = y0; y < y1; y++) {
+			float max = 0;
+			for (int x = 0; x < width; x++) {
+				max = Math.max(max,(float)Math.sqrt(variance(x,y,radius)));
+			}
+			rowMax[y] = max;
+		}
+	}
+
+	/**
+	 * Applies the local threshold rule to every pixel in parallel
+	 */
+	void process( ImageGray input , GrayU8 output , int radius , LocalRule rule ) {
+		if( input.width != width || input.height != height )
+			throw new IllegalArgumentException("Integral image doesn't match input shape");
+		output.reshape(width,height);
+		if( ConvertProcessing.isConcurrent(width,height) ) {
+			BoofConcurrency.loopBlocks(0,height,(y0,y1)->process(input,output,radius,rule,y0,y1));
+		} else {
+			process(input,output,radius,rule,0,height);
+		}
+	}
+
+	void process( ImageGray input , GrayU8 output , int radius , LocalRule rule , int row0 , int row1 ) {
+		GrayU8 inputU8 = input instanceof GrayU8 ? (GrayU8)input : null;
+		GrayF32 inputF32 = input instanceof GrayF32 ? (GrayF32)input : null;
+		if( inputU8 == null && inputF32 == null )
+			throw new RuntimeException("Unknown image type");
+
+		for (int y = row0; y < row1; y++) {
+			int y0 = Math.max(0,y-radius), y1 = Math.min(height,y+radius+1);
+			int indexIn = input.startIndex + y*input.stride;
+			int indexOut = output.startIndex + y*output.stride;
+			for (int x = 0; x < width; x++, indexIn++) {
+				int x0 = Math.max(0,x-radius), x1 = Math.min(width,x+radius+1);
+				double N = (x1-x0)*(y1-y0);
+				float mean = (float)(block(sum,x0,y0,x1,y1)/N);
+				float meanSq = (float)(block(sumSq,x0,y0,x1,y1)/N);
+				float value = inputU8 != null ? inputU8.data[indexIn] & 0xFF : inputF32.data[indexIn];
+				output.data[indexOut++] = (byte)(rule.select(value,mean,meanSq) ? 1 : 0);
+			}
+		}
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Decides if a pixel is selected using statistics of its local region
+	 */
+	interface LocalRule {
+		boolean select( float value , float mean , float meanSq );
+	}
+}
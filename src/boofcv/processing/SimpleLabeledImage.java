@@ -21,6 +21,7 @@ package boofcv.processing;
 import boofcv.alg.filter.binary.BinaryImageOps;
 import boofcv.struct.image.GrayS32;
 import boofcv.struct.image.GrayU8;
+import boofcv.struct.image.ImageType;
 import processing.core.PImage;
 
 /**
@@ -35,13 +36,13 @@ public class SimpleLabeledImage extends SimpleImage<GrayS32> {
 	}
 
 	public SimpleBinary convertBinary() {
-		GrayU8 binary = new GrayU8(image.width, image.height);
+		GrayU8 binary = Boof.pool.newImage(ImageType.single(GrayU8.class),image.width, image.height);
 		BinaryImageOps.labelToBinary(image,binary);
 		return new SimpleBinary(binary);
 	}
 
 	public SimpleBinary convertBinary( boolean selectedBlobs[] ) {
-		GrayU8 binary = new GrayU8(image.width, image.height);
+		GrayU8 binary = Boof.pool.newImage(ImageType.single(GrayU8.class),image.width, image.height);
 		BinaryImageOps.labelToBinary(image,binary,selectedBlobs);
 		return new SimpleBinary(binary);
 	}
@@ -49,4 +50,14 @@ public class SimpleLabeledImage extends SimpleImage<GrayS32> {
 	public PImage visualize() {
 		return VisualizeProcessing.labeled(image);
 	}
+
+	/**
+	 * Same as {@link #visualize()} but writes into the provided output.
+	 *
+	 * @param out Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public PImage visualize( PImage out ) {
+		return VisualizeProcessing.labeled(image, out);
+	}
 }
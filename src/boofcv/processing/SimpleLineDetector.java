@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2011-2020, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.processing;
+
+import boofcv.abst.feature.detect.line.DetectLine;
+import boofcv.struct.image.ImageGray;
+import georegression.struct.line.LineParametric2D_F32;
+import processing.core.PImage;
+
+import java.util.List;
+
+/**
+ * Wrapper around {@link DetectLine} which can be used to process a sequence of images.  The detector, and
+ * all of its internal buffers, are created once and reused for every image.
+ *
+ * @author Peter Abeles
+ */
+public class SimpleLineDetector {
+	DetectLine detector;
+	ImageGray gray;
+
+	public SimpleLineDetector(DetectLine detector) {
+		this.detector = detector;
+		this.gray = (ImageGray)detector.getInputType().createImage(1,1);
+	}
+
+	/**
+	 * Detects lines inside the image.  Must be the same type as the detector's input.
+	 *
+	 * @return List of found lines.
+	 */
+	public List<LineParametric2D_F32> detect( SimpleGray image ) {
+		if( image.image.getClass() != gray.getClass() )
+			throw new IllegalArgumentException("Expected image of type "+gray.getClass().getSimpleName());
+		return detector.detect((ImageGray)image.image);
+	}
+
+	/**
+	 * Converts the image into gray scale and detects lines inside of it.
+	 *
+	 * @return List of found lines.
+	 */
+	public List<LineParametric2D_F32> detect( PImage image ) {
+		ConvertProcessing.convertFromRGB(image,gray);
+		return detector.detect(gray);
+	}
+
+	public DetectLine getDetector() {
+		return detector;
+	}
+}
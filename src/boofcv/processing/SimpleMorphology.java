@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2011-2020, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.processing;
+
+import boofcv.alg.filter.binary.BinaryImageOps;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.struct.image.GrayU8;
+
+/**
+ * Binary morphology which can be applied many times efficiently.  Applying erode or dilate N times is the same
+ * as thresholding the distance to the closest 0 or 1 pixel.  For large N, the distance is computed instead,
+ * which takes the same amount of time no matter what N is. Chessboard distance is used for the 8-connect rule
+ * and city-block distance for the 4-connect rule.  Both are separable and are computed with a pass along
+ * the rows followed by a pass along the columns, each of which is done in parallel.
+ *
+ * Pixels outside the image are treated as 1 when eroding and 0 when dilating.  The results are the same as
+ * {@link BinaryImageOps} no matter which approach is used, including erode4 which always sets the image corners
+ * to 0.
+ *
+ * The output can be the same as the input.  Work space is saved and reused, so create one instance and use it
+ * on every image.
+ *
+ * @author Peter Abeles
+ */
+public class SimpleMorphology {
+	// If an operation is applied this many times or more the distance transform is used
+	int distanceThreshold = 4;
+
+	// distance to the closest target pixel
+	int[] distance = new int[0];
+	// results of the first operation in open and close
+	GrayU8 intermediate = new GrayU8(1,1);
+	// results of erode or dilate when the output is the input
+	GrayU8 inPlace = new GrayU8(1,1);
+
+	public SimpleBinary erode4( SimpleBinary input , int numTimes , SimpleBinary output ) {
+		GrayU8 result = singleOutput(input,output);
+		erode(input.image,numTimes,false,result);
+		return finish(result,output);
+	}
+
+	public SimpleBinary erode8( SimpleBinary input , int numTimes , SimpleBinary output ) {
+		GrayU8 result = singleOutput(input,output);
+		erode(input.image,numTimes,true,result);
+		return finish(result,output);
+	}
+
+	public SimpleBinary dilate4( SimpleBinary input , int numTimes , SimpleBinary output ) {
+		GrayU8 result = singleOutput(input,output);
+		dilate(input.image,numTimes,false,result);
+		return finish(result,output);
+	}
+
+	public SimpleBinary dilate8( SimpleBinary input , int numTimes , SimpleBinary output ) {
+		GrayU8 result = singleOutput(input,output);
+		dilate(input.image,numTimes,true,result);
+		return finish(result,output);
+	}
+
+	/**
+	 * Erode followed by dilate with a 4-connect rule.  Removes small objects and thin protrusions.
+	 */
+	public SimpleBinary open4( SimpleBinary input , int numTimes , SimpleBinary output ) {
+		intermediate.reshape(input.image.width,input.image.height);
+		erode(input.image,numTimes,false,intermediate);
+		dilate(intermediate,numTimes,false,output(input,output));
+		return output;
+	}
+
+	/**
+	 * Erode followed by dilate with an 8-connect rule.  Removes small objects and thin protrusions.
+	 */
+	public SimpleBinary open8( SimpleBinary input , int numTimes , SimpleBinary output ) {
+		intermediate.reshape(input.image.width,input.image.height);
+		erode(input.image,numTimes,true,intermediate);
+		dilate(intermediate,numTimes,true,output(input,output));
+		return output;
+	}
+
+	/**
+	 * Dilate followed by erode with a 4-connect rule.  Fills in small holes and gaps.
+	 */
+	public SimpleBinary close4( SimpleBinary input , int numTimes , SimpleBinary output ) {
+		intermediate.reshape(input.image.width,input.image.height);
+		dilate(input.image,numTimes,false,intermediate);
+		erode(intermediate,numTimes,false,output(input,output));
+		return output;
+	}
+
+	/**
+	 * Dilate followed by erode with an 8-connect rule.  Fills in small holes and gaps.
+	 */
+	public SimpleBinary close8( SimpleBinary input , int numTimes , SimpleBinary output ) {
+		intermediate.reshape(input.image.width,input.image.height);
+		dilate(input.image,numTimes,true,intermediate);
+		erode(intermediate,numTimes,true,output(input,output));
+		return output;
+	}
+
+	void erode( GrayU8 input , int numTimes , boolean connect8 , GrayU8 output ) {
+		if( numTimes < distanceThreshold ) {
+			if( connect8 )
+				BinaryImageOps.erode8(input,numTimes,output);
+			else
+				BinaryImageOps.erode4(input,numTimes,output);
+		} else {
+			// a pixel is eroded if there's a 0 pixel close by
+			distanceTransform(input,0,numTimes,connect8,output);
+			if( !connect8 )
+				erodeCorners(numTimes,output);
+		}
+	}
+
+	/**
+	 * BoofCV's erode4 always sets the image corners to 0, which then spreads inwards by one pixel each time it's
+	 * applied. Sets every pixel within a city-block distance of numTimes-1 from a corner to 0 so that the
+	 * distance transform produces the same results.
+	 */
+	static void erodeCorners( int numTimes , GrayU8 output ) {
+		final int width = output.width, height = output.height;
+		for (int dy = 0; dy < Math.min(numTimes,height); dy++) {
+			int length = Math.min(numTimes-dy,width);
+			int indexTop = output.startIndex + dy*output.stride;
+			int indexBottom = output.startIndex + (height-1-dy)*output.stride;
+			for (int dx = 0; dx < length; dx++) {
+				output.data[indexTop+dx] = 0;
+				output.data[indexTop+width-1-dx] = 0;
+				output.data[indexBottom+dx] = 0;
+				output.data[indexBottom+width-1-dx] = 0;
+			}
+		}
+	}
+
+	void dilate( GrayU8 input , int numTimes , boolean connect8 , GrayU8 output ) {
+		if( numTimes < distanceThreshold ) {
+			if( connect8 )
+				BinaryImageOps.dilate8(input,numTimes,output);
+			else
+				BinaryImageOps.dilate4(input,numTimes,output);
+		} else {
+			// a pixel is dilated if there's a 1 pixel close by
+			distanceTransform(input,1,numTimes,connect8,output);
+		}
+	}
+
+	/**
+	 * Sets every pixel within the specified distance of a pixel with the target value to the target value and
+	 * every other pixel to the opposite value.
+	 *
+	 * @param target The value of pixels which are spread. 0 or 1
+	 * @param radius Maximum distance
+	 * @param chessboard true for chessboard distance and false for city-block
+	 */
+	void distanceTransform( GrayU8 input , int target , int radius , boolean chessboard , GrayU8 output ) {
+		final int width = input.width, height = input.height;
+		if( distance.length < width*height )
+			distance = new int[width*height];
+
+		if( ConvertProcessing.isConcurrent(width,height) ) {
+			BoofConcurrency.loopBlocks(0,height,(y0,y1)->rows(input,target,radius,y0,y1));
+			BoofConcurrency.loopBlocks(0,width,(x0,x1)->columns(target,radius,chessboard,x0,x1,width,height,output));
+		} else {
+			rows(input,target,radius,0,height);
+			columns(target,radius,chessboard,0,width,width,height,output);
+		}
+	}
+
+	/**
+	 * Distance along each row to the closest target pixel.  Saturates at radius+1.
+	 */
+	void rows( GrayU8 input , int target , int radius , int y0 , int y1 ) {
+		final int width = input.width;
+		final int far = radius+1;
+		for (int y = y0; y < y1; y++) {
+			int indexIn = input.startIndex + y*input.stride;
+			int indexDist = y*width;
+
+			int d = far;
+			for (int x = 0; x < width; x++) {
+				d = (input.data[indexIn+x] != 0) == (target != 0) ? 0 : Math.min(far,d+1);
+				distance[indexDist+x] = d;
+			}
+			d = far;
+			for (int x = width-1; x >= 0; x--) {
+				d = Math.min(distance[indexDist+x],d+1);
+				distance[indexDist+x] = d;
+			}
+		}
+	}
+
+	/**
+	 * Combines the row distances along each column then thresholds.
+	 */
+	void columns( int target , int radius , boolean chessboard , int x0 , int x1 ,
+				  int width , int height , GrayU8 output ) {
+		final int far = radius+1;
+		final byte valueNear = (byte)target;
+		final byte valueFar = (byte)(1-target);
+
+		if( chessboard ) {
+			// distance to the closest row which has a target pixel within the radius
+			for (int y = 0; y < height; y++) {
+				int index = y*width;
+				for (int x = x0; x < x1; x++) {
+					int prev = y > 0 ? distance[index-width+x] : far;
+					distance[index+x] = distance[index+x] <= radius ? 0 : Math.min(far,prev+1);
+				}
+			}
+		} else {
+			for (int y = 1; y < height; y++) {
+				int index = y*width;
+				for (int x = x0; x < x1; x++) {
+					distance[index+x] = Math.min(distance[index+x],distance[index-width+x]+1);
+				}
+			}
+		}
+
+		// backwards pass is the same for both
+		for (int y = height-1; y >= 0; y--) {
+			int index = y*width;
+			int indexOut = output.startIndex + y*output.stride;
+			for (int x = x0; x < x1; x++) {
+				int d = distance[index+x];
+				if( y+1 < height ) {
+					d = Math.min(d,distance[index+width+x]+1);
+					distance[index+x] = d;
+				}
+				output.data[indexOut+x] = d <= radius ? valueNear : valueFar;
+			}
+		}
+	}
+
+	GrayU8 output( SimpleBinary input , SimpleBinary output ) {
+		output.image.reshape(input.image.width,input.image.height);
+		return output.image;
+	}
+
+	/**
+	 * Output for an operation which reads the input while writing.  If the output is the input then the
+	 * results are written to a work image first.
+	 */
+	GrayU8 singleOutput( SimpleBinary input , SimpleBinary output ) {
+		if( input.image == output.image ) {
+			inPlace.reshape(input.image.width,input.image.height);
+			return inPlace;
+		}
+		return output(input,output);
+	}
+
+	static SimpleBinary finish( GrayU8 result , SimpleBinary output ) {
+		if( result != output.image )
+			output.image.setTo(result);
+		return output;
+	}
+
+	public int getDistanceThreshold() {
+		return distanceThreshold;
+	}
+
+	/**
+	 * If an operation is applied this many times or more then the distance transform is used instead
+	 * of repeatedly applying it.
+	 */
+	public void setDistanceThreshold( int distanceThreshold ) {
+		this.distanceThreshold = distanceThreshold;
+	}
+}
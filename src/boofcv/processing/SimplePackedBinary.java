@@ -0,0 +1,484 @@
+/*
+ * Copyright (c) 2011-2020, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.processing;
+
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.struct.image.GrayU8;
+import boofcv.struct.image.ImageType;
+
+/**
+ * Binary image where each pixel is a single bit, 64 pixels to a long.  Uses 1/8 the memory of
+ * {@link SimpleBinary} and logical operations and morphology process 64 pixels at once. Convert to
+ * {@link SimpleBinary} for operations which aren't supported here, e.g. contours.
+ *
+ * Pixel x in a row is stored in bit (x % 64) of word (x / 64). Bits past the end of a row are always zero.
+ * When eroding, pixels outside the image are treated as 1, when dilating or finding edges they are
+ * treated as 0. This is the same as {@link SimpleBinary}, except for erode4 at the four image corners.
+ * {@link SimpleBinary} always sets a corner pixel to 0 when eroding with a 4-connect rule, while here it's
+ * handled like every other border pixel. A single erode4 can differ at only the corner pixels. Each
+ * additional pass can spread the difference inward by one more pixel, up to n*(n+1)/2 pixels per corner.
+ *
+ * @author Peter Abeles
+ */
+public class SimplePackedBinary {
+	// operations for morphology
+	static final int ERODE4 = 0, ERODE8 = 1, DILATE4 = 2, DILATE8 = 3, EDGE4 = 4, EDGE8 = 5;
+
+	int width, height;
+	// number of words in each row
+	int stride;
+	long[] data = new long[0];
+
+	// storage for intermediate results when an operation is applied multiple times
+	long[] workA = new long[0], workB = new long[0];
+
+	public SimplePackedBinary( int width , int height ) {
+		reshape(width,height);
+	}
+
+	/**
+	 * Creates a packed copy of the binary image
+	 */
+	public SimplePackedBinary( SimpleBinary image ) {
+		this(image.image.width,image.image.height);
+		setTo(image);
+	}
+
+	/**
+	 * Changes the shape of the image.  Memory is only allocated if it grows.  The value of pixels is undefined
+	 * after the shape changes.
+	 */
+	public void reshape( int width , int height ) {
+		this.width = width;
+		this.height = height;
+		this.stride = (width+63)/64;
+		if( data.length < stride*height )
+			data = new long[stride*height];
+	}
+
+	/**
+	 * Packs the binary image into this image.  Any non-zero value is 1.
+	 */
+	public SimplePackedBinary setTo( SimpleBinary image ) {
+		GrayU8 input = image.image;
+		reshape(input.width,input.height);
+		if( ConvertProcessing.isConcurrent(width,height) ) {
+			BoofConcurrency.loopBlocks(0,height,(y0,y1)->pack(input,y0,y1));
+		} else {
+			pack(input,0,height);
+		}
+		return this;
+	}
+
+	void pack( GrayU8 input , int y0 , int y1 ) {
+		for (int y = y0; y < y1; y++) {
+			int indexIn = input.startIndex + y*input.stride;
+			int indexOut = y*stride;
+			for (int x = 0; x < width; x += 64) {
+				int end = Math.min(64,width-x);
+				long word = 0;
+				for (int bit = 0; bit < end; bit++) {
+					if( input.data[indexIn++] != 0 )
+						word |= 1L << bit;
+				}
+				data[indexOut++] = word;
+			}
+		}
+	}
+
+	/**
+	 * Converts into a binary image with one byte per pixel
+	 */
+	public SimpleBinary convert() {
+		return convert(new SimpleBinary(Boof.pool.newImage(ImageType.single(GrayU8.class),width,height)));
+	}
+
+	/**
+	 * Same as {@link #convert()} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary convert( SimpleBinary output ) {
+		GrayU8 out = output.image;
+		out.reshape(width,height);
+		if( ConvertProcessing.isConcurrent(width,height) ) {
+			BoofConcurrency.loopBlocks(0,height,(y0,y1)->unpack(out,y0,y1));
+		} else {
+			unpack(out,0,height);
+		}
+		return output;
+	}
+
+	void unpack( GrayU8 output , int y0 , int y1 ) {
+		for (int y = y0; y < y1; y++) {
+			int indexIn = y*stride;
+			int indexOut = output.startIndex + y*output.stride;
+			for (int x = 0; x < width; x += 64) {
+				int end = Math.min(64,width-x);
+				long word = data[indexIn++];
+				for (int bit = 0; bit < end; bit++) {
+					output.data[indexOut++] = (byte)((word >>> bit) & 1);
+				}
+			}
+		}
+	}
+
+	public SimplePackedBinary logicAnd( SimplePackedBinary imgB ) {
+		return logicAnd(imgB, new SimplePackedBinary(width,height));
+	}
+
+	/**
+	 * Same as {@link #logicAnd(SimplePackedBinary)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimplePackedBinary logicAnd( SimplePackedBinary imgB , SimplePackedBinary output ) {
+		checkSameShape(imgB);
+		output.reshape(width,height);
+		final long[] a = data, b = imgB.data, c = output.data;
+		for (int i = 0, N = stride*height; i < N; i++) {
+			c[i] = a[i] & b[i];
+		}
+		return output;
+	}
+
+	public SimplePackedBinary logicOr( SimplePackedBinary imgB ) {
+		return logicOr(imgB, new SimplePackedBinary(width,height));
+	}
+
+	/**
+	 * Same as {@link #logicOr(SimplePackedBinary)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimplePackedBinary logicOr( SimplePackedBinary imgB , SimplePackedBinary output ) {
+		checkSameShape(imgB);
+		output.reshape(width,height);
+		final long[] a = data, b = imgB.data, c = output.data;
+		for (int i = 0, N = stride*height; i < N; i++) {
+			c[i] = a[i] | b[i];
+		}
+		return output;
+	}
+
+	public SimplePackedBinary logicXor( SimplePackedBinary imgB ) {
+		return logicXor(imgB, new SimplePackedBinary(width,height));
+	}
+
+	/**
+	 * Same as {@link #logicXor(SimplePackedBinary)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimplePackedBinary logicXor( SimplePackedBinary imgB , SimplePackedBinary output ) {
+		checkSameShape(imgB);
+		output.reshape(width,height);
+		final long[] a = data, b = imgB.data, c = output.data;
+		for (int i = 0, N = stride*height; i < N; i++) {
+			c[i] = a[i] ^ b[i];
+		}
+		return output;
+	}
+
+	public SimplePackedBinary invert() {
+		return invert(new SimplePackedBinary(width,height));
+	}
+
+	/**
+	 * Same as {@link #invert()} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimplePackedBinary invert( SimplePackedBinary output ) {
+		output.reshape(width,height);
+		final long lastMask = lastMask();
+		for (int y = 0; y < height; y++) {
+			int index = y*stride;
+			for (int i = 0; i < stride; i++, index++) {
+				output.data[index] = ~data[index];
+			}
+			output.data[index-1] &= lastMask;
+		}
+		return output;
+	}
+
+	public SimplePackedBinary erode4( int numTimes ) {
+		return erode4(numTimes, new SimplePackedBinary(width,height));
+	}
+
+	/**
+	 * Same as {@link #erode4(int)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimplePackedBinary erode4( int numTimes , SimplePackedBinary output ) {
+		return morph(ERODE4,numTimes,output);
+	}
+
+	public SimplePackedBinary erode8( int numTimes ) {
+		return erode8(numTimes, new SimplePackedBinary(width,height));
+	}
+
+	/**
+	 * Same as {@link #erode8(int)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimplePackedBinary erode8( int numTimes , SimplePackedBinary output ) {
+		return morph(ERODE8,numTimes,output);
+	}
+
+	public SimplePackedBinary dilate4( int numTimes ) {
+		return dilate4(numTimes, new SimplePackedBinary(width,height));
+	}
+
+	/**
+	 * Same as {@link #dilate4(int)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimplePackedBinary dilate4( int numTimes , SimplePackedBinary output ) {
+		return morph(DILATE4,numTimes,output);
+	}
+
+	public SimplePackedBinary dilate8( int numTimes ) {
+		return dilate8(numTimes, new SimplePackedBinary(width,height));
+	}
+
+	/**
+	 * Same as {@link #dilate8(int)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimplePackedBinary dilate8( int numTimes , SimplePackedBinary output ) {
+		return morph(DILATE8,numTimes,output);
+	}
+
+	public SimplePackedBinary edge4() {
+		return edge4(new SimplePackedBinary(width,height));
+	}
+
+	/**
+	 * Same as {@link #edge4()} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimplePackedBinary edge4( SimplePackedBinary output ) {
+		return morph(EDGE4,1,output);
+	}
+
+	public SimplePackedBinary edge8() {
+		return edge8(new SimplePackedBinary(width,height));
+	}
+
+	/**
+	 * Same as {@link #edge8()} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimplePackedBinary edge8( SimplePackedBinary output ) {
+		return morph(EDGE8,1,output);
+	}
+
+	/**
+	 * Number of pixels with a value of 1
+	 */
+	public int countOnes() {
+		int total = 0;
+		for (int i = 0, N = stride*height; i < N; i++) {
+			total += Long.bitCount(data[i]);
+		}
+		return total;
+	}
+
+	public boolean get( int x , int y ) {
+		return ((data[y*stride + x/64] >>> (x & 63)) & 1) != 0;
+	}
+
+	public void set( int x , int y , boolean value ) {
+		int index = y*stride + x/64;
+		if( value )
+			data[index] |= 1L << (x & 63);
+		else
+			data[index] &= ~(1L << (x & 63));
+	}
+
+	/**
+	 * Applies the operation multiple times, swapping between work buffers, with the final result
+	 * written into the output
+	 */
+	SimplePackedBinary morph( int op , int numTimes , SimplePackedBinary output ) {
+		if( output == this )
+			throw new IllegalArgumentException("Output can't be the input");
+		output.reshape(width,height);
+		int N = stride*height;
+		if( numTimes <= 0 ) {
+			System.arraycopy(data,0,output.data,0,N);
+			return output;
+		}
+		if( numTimes > 1 && output.workA.length < N ) {
+			output.workA = new long[N];
+			output.workB = new long[N];
+		}
+
+		long[] src = data;
+		for (int i = 0; i < numTimes; i++) {
+			long[] dst = i == numTimes-1 ? output.data : (i%2 == 0 ? output.workA : output.workB);
+			final long[] _src = src;
+			if( ConvertProcessing.isConcurrent(width,height) ) {
+				BoofConcurrency.loopBlocks(0,height,(y0,y1)->morph(op,_src,dst,y0,y1));
+			} else {
+				morph(op,_src,dst,0,height);
+			}
+			src = dst;
+		}
+		return output;
+	}
+
+	void morph( int op , long[] src , long[] dst , int y0 , int y1 ) {
+		final long lastMask = lastMask();
+		for (int y = y0; y < y1; y++) {
+			int indexOut = y*stride;
+			for (int i = 0; i < stride; i++) {
+				long value;
+				switch( op ) {
+					case ERODE4: value = erode4(src,y,i,-1L); break;
+					case ERODE8: value = erode8(src,y,i,-1L); break;
+					case DILATE4: value = dilate4(src,y,i); break;
+					case DILATE8: value = dilate8(src,y,i); break;
+					case EDGE4: value = src[y*stride+i] & ~erode4(src,y,i,0); break;
+					case EDGE8: value = src[y*stride+i] & ~erode8(src,y,i,0); break;
+					default: throw new RuntimeException("Unknown operation");
+				}
+				dst[indexOut++] = value;
+			}
+			dst[indexOut-1] &= lastMask;
+		}
+	}
+
+	/**
+	 * @param outside value of pixels outside the image. 0 or -1
+	 */
+	final long erode4( long[] src , int y , int i , long outside ) {
+		long up = y > 0 ? src[(y-1)*stride+i] : outside;
+		long down = y+1 < height ? src[(y+1)*stride+i] : outside;
+		int row = y*stride;
+		return src[row+i] & left(src,row,i,outside) & right(src,row,i,outside) & up & down;
+	}
+
+	/**
+	 * @param outside value of pixels outside the image. 0 or -1
+	 */
+	final long erode8( long[] src , int y , int i , long outside ) {
+		long up = y > 0 ? minRow(src,(y-1)*stride,i,outside) : outside;
+		long down = y+1 < height ? minRow(src,(y+1)*stride,i,outside) : outside;
+		return minRow(src,y*stride,i,outside) & up & down;
+	}
+
+	final long dilate4( long[] src , int y , int i ) {
+		long up = y > 0 ? src[(y-1)*stride+i] : 0;
+		long down = y+1 < height ? src[(y+1)*stride+i] : 0;
+		int row = y*stride;
+		return src[row+i] | left(src,row,i,0) | right(src,row,i,0) | up | down;
+	}
+
+	final long dilate8( long[] src , int y , int i ) {
+		long up = y > 0 ? maxRow(src,(y-1)*stride,i) : 0;
+		long down = y+1 < height ? maxRow(src,(y+1)*stride,i) : 0;
+		return maxRow(src,y*stride,i) | up | down;
+	}
+
+	/**
+	 * Minimum of each pixel and its left and right neighbors
+	 */
+	final long minRow( long[] src , int row , int i , long outside ) {
+		return src[row+i] & left(src,row,i,outside) & right(src,row,i,outside);
+	}
+
+	/**
+	 * Maximum of each pixel and its left and right neighbors
+	 */
+	final long maxRow( long[] src , int row , int i ) {
+		return src[row+i] | left(src,row,i,0) | right(src,row,i,0);
+	}
+
+	/**
+	 * Each bit is the value of the pixel to its left
+	 */
+	final long left( long[] src , int row , int i , long outside ) {
+		long carry = i > 0 ? src[row+i-1] >>> 63 : outside & 1;
+		return (src[row+i] << 1) | carry;
+	}
+
+	/**
+	 * Each bit is the value of the pixel to its right
+	 */
+	final long right( long[] src , int row , int i , long outside ) {
+		if( i+1 < stride )
+			return (src[row+i] >>> 1) | (src[row+i+1] << 63);
+		// the pixel to the right of the last pixel in the row is outside the image
+		return (src[row+i] >>> 1) | ((outside & 1) << ((width-1) & 63));
+	}
+
+	/**
+	 * Mask for the valid bits in the last word of each row
+	 */
+	final long lastMask() {
+		int remainder = width & 63;
+		return remainder == 0 ? -1L : (1L << remainder) - 1;
+	}
+
+	void checkSameShape( SimplePackedBinary imgB ) {
+		if( imgB.width != width || imgB.height != height )
+			throw new IllegalArgumentException("Images must have the same shape");
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Internal array of packed pixels. Row y starts at index y*stride.
+	 */
+	public long[] getData() {
+		return data;
+	}
+
+	/**
+	 * Number of longs in each row
+	 */
+	public int getStride() {
+		return stride;
+	}
+}
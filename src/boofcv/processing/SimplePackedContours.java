@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2011-2020, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.processing;
+
+import boofcv.alg.filter.binary.Contour;
+import boofcv.alg.filter.binary.ContourPacked;
+import boofcv.struct.PackedSetsPoint2D_I32;
+import georegression.struct.point.Point2D_I32;
+import org.ddogleg.struct.FastQueue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact storage for contours.  The coordinates of every point are saved in a single int array and each
+ * contour is described by offsets into that array, so no objects are created for individual points.
+ *
+ * Points are stored in sets.  A set is either the external contour of a blob or one of its internal contours.
+ * The sets in contour i are from contourStart[i] to contourStart[i+1]-1, with the first set being the external
+ * contour.  The points in a set are from setStart[j] to setStart[j+1]-1, with point k at points[2*k] and
+ * points[2*k+1].
+ *
+ * @author Peter Abeles
+ */
+public class SimplePackedContours {
+	// x and y coordinates of every point
+	int[] points = new int[0];
+	int numPoints;
+
+	// index of the first point in each set. Has numSets+1 elements
+	int[] setStart = new int[1];
+	int numSets;
+
+	// index of the first set in each contour. Has numContours+1 elements
+	int[] contourStart = new int[1];
+	int numContours;
+
+	// work space for converting sets into a list of points while contours are added. Not thread safe, so it
+	// must not be used by functions which read the contours
+	FastQueue<Point2D_I32> work = new FastQueue<>(Point2D_I32::new);
+
+	/**
+	 * Removes all contours
+	 */
+	public void reset() {
+		numPoints = 0;
+		numSets = 0;
+		numContours = 0;
+	}
+
+	/**
+	 * Starts a new contour. The next set will be its external contour
+	 */
+	public void startContour() {
+		numContours++;
+		if( contourStart.length < numContours+1 )
+			contourStart = Arrays.copyOf(contourStart,Math.max(numContours+1,contourStart.length*2));
+		contourStart[numContours] = numSets;
+	}
+
+	/**
+	 * Starts a new set in the most recent contour
+	 */
+	public void startSet() {
+		numSets++;
+		if( setStart.length < numSets+1 )
+			setStart = Arrays.copyOf(setStart,Math.max(numSets+1,setStart.length*2));
+		setStart[numSets] = numPoints;
+		contourStart[numContours] = numSets;
+	}
+
+	/**
+	 * Adds a point to the most recent set
+	 */
+	public void addPoint( int x , int y ) {
+		if( points.length < 2*(numPoints+1) )
+			points = Arrays.copyOf(points,Math.max(2*(numPoints+1),points.length*2));
+		points[2*numPoints] = x;
+		points[2*numPoints+1] = y;
+		numPoints++;
+		setStart[numSets] = numPoints;
+	}
+
+	/**
+	 * Adds a set of points from BoofCV's packed storage to the most recent contour
+	 *
+	 * @param offsetX Added to the x-coordinate of every point
+	 * @param offsetY Added to the y-coordinate of every point
+	 */
+	public void addSet( PackedSetsPoint2D_I32 src , int set , int offsetX , int offsetY ) {
+		startSet();
+		src.getSet(set,work);
+		for (int i = 0; i < work.size; i++) {
+			Point2D_I32 p = work.get(i);
+			addPoint(p.x + offsetX, p.y + offsetY);
+		}
+	}
+
+	/**
+	 * Adds a contour found by {@link boofcv.alg.filter.binary.LinearContourLabelChang2004} to the end
+	 *
+	 * @param offsetX Added to the x-coordinate of every point
+	 * @param offsetY Added to the y-coordinate of every point
+	 */
+	public void add( PackedSetsPoint2D_I32 src , ContourPacked contour , int offsetX , int offsetY ) {
+		startContour();
+		addSet(src,contour.externalIndex,offsetX,offsetY);
+		for (int i = 0; i < contour.internalIndexes.size; i++) {
+			addSet(src,contour.internalIndexes.get(i),offsetX,offsetY);
+		}
+	}
+
+	/**
+	 * Adds a contour to the end
+	 */
+	public void add( Contour contour ) {
+		startContour();
+		addSet(contour.external);
+		for (int i = 0; i < contour.internal.size(); i++) {
+			addSet(contour.internal.get(i));
+		}
+	}
+
+	void addSet( List<Point2D_I32> list ) {
+		startSet();
+		for (int i = 0; i < list.size(); i++) {
+			Point2D_I32 p = list.get(i);
+			addPoint(p.x,p.y);
+		}
+	}
+
+	/**
+	 * Copies a contour from another instance to the end
+	 */
+	public void add( SimplePackedContours src , int contour ) {
+		startContour();
+		for (int set = src.contourStart[contour]; set < src.contourStart[contour+1]; set++) {
+			startSet();
+			int p0 = src.setStart[set], p1 = src.setStart[set+1];
+			int length = p1-p0;
+			if( points.length < 2*(numPoints+length) )
+				points = Arrays.copyOf(points,Math.max(2*(numPoints+length),points.length*2));
+			System.arraycopy(src.points,2*p0,points,2*numPoints,2*length);
+			numPoints += length;
+			setStart[numSets] = numPoints;
+		}
+	}
+
+	/**
+	 * Number of contours
+	 */
+	public int size() {
+		return numContours;
+	}
+
+	/**
+	 * Index of the set with the external contour of a blob
+	 */
+	public int externalSet( int contour ) {
+		return contourStart[contour];
+	}
+
+	/**
+	 * Number of internal contours in a blob
+	 */
+	public int internalCount( int contour ) {
+		return contourStart[contour+1] - contourStart[contour] - 1;
+	}
+
+	/**
+	 * Index of the set with internal contour i of a blob
+	 */
+	public int internalSet( int contour , int i ) {
+		return contourStart[contour] + 1 + i;
+	}
+
+	/**
+	 * Number of points in a set
+	 */
+	public int setSize( int set ) {
+		return setStart[set+1] - setStart[set];
+	}
+
+	public int getX( int set , int i ) {
+		return points[2*(setStart[set]+i)];
+	}
+
+	public int getY( int set , int i ) {
+		return points[2*(setStart[set]+i)+1];
+	}
+
+	/**
+	 * Area of the polygon defined by the points in a set, computed using the shoelace formula
+	 */
+	public double area( int set ) {
+		final int p0 = setStart[set], p1 = setStart[set+1];
+		if( p1-p0 < 3 )
+			return 0;
+		long sum = 0;
+		int prevX = points[2*(p1-1)], prevY = points[2*(p1-1)+1];
+		for (int i = p0; i < p1; i++) {
+			int x = points[2*i], y = points[2*i+1];
+			sum += (long)prevX*y - (long)x*prevY;
+			prevX = x;
+			prevY = y;
+		}
+		return Math.abs(sum)/2.0;
+	}
+
+	/**
+	 * Copies a set into the provided storage.  Points in the storage are recycled.
+	 *
+	 * @return The storage
+	 */
+	public FastQueue<Point2D_I32> getSet( int set , FastQueue<Point2D_I32> storage ) {
+		storage.reset();
+		for (int i = setStart[set]; i < setStart[set+1]; i++) {
+			storage.grow().set(points[2*i],points[2*i+1]);
+		}
+		return storage;
+	}
+
+	/**
+	 * Creates a new list which contains a copy of the points in a set
+	 */
+	public List<Point2D_I32> copySet( int set ) {
+		List<Point2D_I32> list = new ArrayList<>(setSize(set));
+		for (int i = setStart[set]; i < setStart[set+1]; i++) {
+			list.add(new Point2D_I32(points[2*i],points[2*i+1]));
+		}
+		return list;
+	}
+
+	/**
+	 * Converts a contour into BoofCV's format, which has an object for every point
+	 */
+	public Contour toContour( int contour ) {
+		Contour out = new Contour();
+		out.external = copySet(externalSet(contour));
+		for (int i = 0; i < internalCount(contour); i++) {
+			out.internal.add(copySet(internalSet(contour,i)));
+		}
+		return out;
+	}
+
+	/**
+	 * Draws the points in a set
+	 */
+	public void visualize( int set , int color , int[] pixels , int width ) {
+		for (int i = setStart[set]; i < setStart[set+1]; i++) {
+			pixels[points[2*i+1]*width + points[2*i]] = color;
+		}
+	}
+
+	/**
+	 * Total number of points in every contour
+	 */
+	public int getPointCount() {
+		return numPoints;
+	}
+
+	public int[] getPoints() {
+		return points;
+	}
+}
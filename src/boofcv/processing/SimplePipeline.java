@@ -0,0 +1,747 @@
+/*
+ * Copyright (c) 2011-2020, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.processing;
+
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.core.image.FactoryGImageGray;
+import boofcv.core.image.GImageGray;
+import boofcv.factory.filter.kernel.FactoryKernelGaussian;
+import boofcv.struct.convolve.Kernel1D_F32;
+import boofcv.struct.image.GrayF32;
+import boofcv.struct.image.GrayU8;
+import boofcv.struct.image.ImageGray;
+import boofcv.struct.image.ImageType;
+import org.ddogleg.struct.FastQueue;
+import processing.core.PImage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Deferred sequence of operations on a gray or binary image.  Operations are only recorded until a terminal
+ * function, e.g. {@link #binary()}, {@link #contour()}, or {@link #convert()}, is called.  Then the entire
+ * sequence is run one horizontal strip at a time, so intermediate results stay in the cache instead of
+ * being written out as full images.  Each strip is expanded by the number of rows the remaining operations
+ * need from above and below.  Consecutive pixel-wise operations, such as threshold and logic, are applied
+ * together one row at a time.  Strips are processed in parallel when concurrency is turned on.
+ *
+ * Internally all values are floating point, so results of blurs on integer images can differ from the
+ * equivalent function in {@link SimpleGray} by rounding.
+ *
+ * @author Peter Abeles
+ */
+public class SimplePipeline {
+	// Input image
+	ImageGray source;
+	// true if the values after the most recently added operation are binary
+	boolean binary;
+
+	List<Operation> operations = new ArrayList<>();
+
+	// Number of rows in a strip. If zero it's selected automatically
+	int stripHeight = 0;
+
+	// Each thread has its own workspace
+	FastQueue<Workspace> workspaces = new FastQueue<>(Workspace::new);
+
+	// total number of rows needed above and below by operation i and all the ones after it
+	int[] halo = new int[0];
+
+	SimplePipeline(ImageGray source, boolean binary) {
+		this.source = source;
+		this.binary = binary;
+	}
+
+	/**
+	 * @see SimpleGray#blurMean
+	 */
+	public SimplePipeline blurMean( int radius ) {
+		operations.add(new BlurMean(radius));
+		binary = false;
+		return this;
+	}
+
+	/**
+	 * @see SimpleGray#blurGaussian
+	 */
+	public SimplePipeline blurGaussian( double sigma, int radius ) {
+		operations.add(new BlurGaussian(FactoryKernelGaussian.gaussian1D(GrayF32.class,sigma,radius)));
+		binary = false;
+		return this;
+	}
+
+	/**
+	 * @see SimpleGray#threshold
+	 */
+	public SimplePipeline threshold( double threshold , boolean down ) {
+		operations.add(new Threshold((float)threshold,down));
+		binary = true;
+		return this;
+	}
+
+	/**
+	 * @see SimpleGray#thresholdMean
+	 */
+	public SimplePipeline thresholdMean( int width, double bias, boolean down ) {
+		operations.add(new ThresholdMean(width/2,(float)bias,down));
+		binary = true;
+		return this;
+	}
+
+	/**
+	 * @see SimpleBinary#erode8
+	 */
+	public SimplePipeline erode8( int numTimes ) {
+		checkBinary();
+		operations.add(new Morph8(numTimes,true));
+		return this;
+	}
+
+	/**
+	 * @see SimpleBinary#dilate8
+	 */
+	public SimplePipeline dilate8( int numTimes ) {
+		checkBinary();
+		operations.add(new Morph8(numTimes,false));
+		return this;
+	}
+
+	/**
+	 * @see SimpleBinary#logicAnd
+	 */
+	public SimplePipeline logicAnd( SimpleBinary imgB ) {
+		checkBinary();
+		operations.add(new Logic(checkShape(imgB),Logic.AND));
+		return this;
+	}
+
+	/**
+	 * @see SimpleBinary#logicOr
+	 */
+	public SimplePipeline logicOr( SimpleBinary imgB ) {
+		checkBinary();
+		operations.add(new Logic(checkShape(imgB),Logic.OR));
+		return this;
+	}
+
+	/**
+	 * @see SimpleBinary#logicXor
+	 */
+	public SimplePipeline logicXor( SimpleBinary imgB ) {
+		checkBinary();
+		operations.add(new Logic(checkShape(imgB),Logic.XOR));
+		return this;
+	}
+
+	/**
+	 * Swaps the values of 0 and 1 in a binary image
+	 */
+	public SimplePipeline invert() {
+		checkBinary();
+		operations.add(new Logic(null,Logic.INVERT));
+		return this;
+	}
+
+	/**
+	 * Runs the pipeline and returns the binary image.
+	 */
+	public SimpleBinary binary() {
+		return binary(new SimpleBinary(
+				Boof.pool.newImage(ImageType.single(GrayU8.class),source.width,source.height)));
+	}
+
+	/**
+	 * Runs the pipeline and writes the binary image into the provided output
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary binary( SimpleBinary output ) {
+		checkBinary();
+		GrayU8 out = output.image;
+		out.reshape(source.width,source.height);
+		process((values, offset, y) -> {
+			int index = out.startIndex + y*out.stride;
+			for (int x = 0; x < out.width; x++) {
+				out.data[index++] = (byte)(values[offset++] != 0 ? 1 : 0);
+			}
+		});
+		return output;
+	}
+
+	/**
+	 * Runs the pipeline and returns the gray scale image.  Image type is the same as the input for U8 and
+	 * F32 otherwise.
+	 */
+	public SimpleGray gray() {
+		ImageType type = source instanceof GrayU8 ? source.getImageType() : ImageType.single(GrayF32.class);
+		return gray(new SimpleGray((ImageGray)Boof.pool.newImage(type,source.width,source.height)));
+	}
+
+	/**
+	 * Runs the pipeline and writes the gray scale image into the provided output.  U8 and F32 are supported.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleGray gray( SimpleGray output ) {
+		output.invalidateCache();
+		output.image.reshape(source.width,source.height);
+		if( output.image instanceof GrayU8 ) {
+			GrayU8 out = (GrayU8)output.image;
+			process((values, offset, y) -> {
+				int index = out.startIndex + y*out.stride;
+				for (int x = 0; x < out.width; x++) {
+					int v = (int)(values[offset++] + 0.5f);
+					out.data[index++] = (byte)(v < 0 ? 0 : (v > 255 ? 255 : v));
+				}
+			});
+		} else if( output.image instanceof GrayF32 ) {
+			GrayF32 out = (GrayF32)output.image;
+			process((values, offset, y) ->
+					System.arraycopy(values,offset,out.data,out.startIndex + y*out.stride,out.width));
+		} else {
+			throw new RuntimeException("Unknown image type");
+		}
+		return output;
+	}
+
+	/**
+	 * Runs the pipeline and finds the contours of the binary image
+	 *
+	 * @see SimpleBinary#contour
+	 */
+	public ResultsBlob contour() {
+		return binary().contour();
+	}
+
+	/**
+	 * Runs the pipeline and renders the results.  Binary images are rendered black and white.
+	 */
+	public PImage convert() {
+		return convert(Boof.pool.newPImage(source.width,source.height));
+	}
+
+	/**
+	 * Runs the pipeline and renders the results into the provided image
+	 *
+	 * @param out Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public PImage convert( PImage out ) {
+		ConvertProcessing.reshape(out,source.width,source.height);
+		final float scale = binary ? 255 : 1;
+		process((values, offset, y) -> {
+			int index = y*out.width;
+			for (int x = 0; x < out.width; x++) {
+				int v = (int)(scale*values[offset++]);
+				v = v < 0 ? 0 : (v > 255 ? 255 : v);
+				out.pixels[index++] = 0xFF << 24 | v << 16 | v << 8 | v;
+			}
+		});
+		return out;
+	}
+
+	/**
+	 * Specifies the number of rows in each strip.  If zero it will be selected automatically so that
+	 * a strip fits inside the cache.
+	 */
+	public void setStripHeight( int stripHeight ) {
+		this.stripHeight = stripHeight;
+	}
+
+	/**
+	 * Runs all the operations and passes the final rows to the writer
+	 */
+	void process( RowWriter writer ) {
+		final int width = source.width;
+		final int height = source.height;
+
+		// Compute how many extra rows each operation needs
+		halo = new int[operations.size()+1];
+		for (int i = operations.size()-1; i >= 0; i--) {
+			halo[i] = halo[i+1] + operations.get(i).radius();
+		}
+
+		int rows = stripHeight;
+		if( rows <= 0 ) {
+			// target about 128 KB per strip and keep the overlap between strips small
+			rows = Math.max(16, Math.max(4*halo[0], 32*1024/Math.max(1,width)));
+		}
+		final int stripRows = Math.min(rows,height);
+		int numStrips = (height + stripRows - 1)/stripRows;
+
+		if( ConvertProcessing.isConcurrent(width,height) ) {
+			BoofConcurrency.loopBlocks(0,numStrips,workspaces,(work,s0,s1)->{
+				for (int s = s0; s < s1; s++) {
+					processStrip(work,s*stripRows,Math.min(height,(s+1)*stripRows),writer);
+				}
+			});
+		} else {
+			workspaces.reset();
+			Workspace work = workspaces.grow();
+			for (int s = 0; s < numStrips; s++) {
+				processStrip(work,s*stripRows,Math.min(height,(s+1)*stripRows),writer);
+			}
+		}
+	}
+
+	/**
+	 * Computes output rows y0 to y1-1
+	 */
+	void processStrip( Workspace work , int y0 , int y1 , RowWriter writer ) {
+		final int height = source.height;
+		Strip current = work.stripA;
+		Strip next = work.stripB;
+
+		current.setRows(source.width,Math.max(0,y0-halo[0]),Math.min(height,y1+halo[0]));
+		load(current);
+
+		for (int i = 0; i < operations.size(); i++) {
+			Operation op = operations.get(i);
+			if( op instanceof PointOperation ) {
+				// apply all consecutive pixel-wise operations to a row before moving on to the next
+				int end = i+1;
+				while( end < operations.size() && operations.get(end) instanceof PointOperation )
+					end++;
+				for (int y = current.y0; y < current.y1; y++) {
+					int offset = current.offset(y);
+					for (int j = i; j < end; j++) {
+						((PointOperation)operations.get(j)).process(current.data,offset,current.width,y);
+					}
+				}
+				i = end-1;
+			} else {
+				next.setRows(source.width,Math.max(0,y0-halo[i+1]),Math.min(height,y1+halo[i+1]));
+				((AreaOperation)op).process(current,next,work,height);
+				Strip tmp = current; current = next; next = tmp;
+			}
+		}
+
+		for (int y = y0; y < y1; y++) {
+			writer.write(current.data,current.offset(y),y);
+		}
+	}
+
+	/**
+	 * Copies rows from the source image into the strip
+	 */
+	void load( Strip strip ) {
+		if( source instanceof GrayU8 ) {
+			GrayU8 src = (GrayU8)source;
+			for (int y = strip.y0; y < strip.y1; y++) {
+				int indexSrc = src.startIndex + y*src.stride;
+				int indexDst = strip.offset(y);
+				for (int x = 0; x < src.width; x++) {
+					strip.data[indexDst++] = src.data[indexSrc++] & 0xFF;
+				}
+			}
+		} else if( source instanceof GrayF32 ) {
+			GrayF32 src = (GrayF32)source;
+			for (int y = strip.y0; y < strip.y1; y++) {
+				System.arraycopy(src.data,src.startIndex + y*src.stride,strip.data,strip.offset(y),src.width);
+			}
+		} else {
+			GImageGray src = FactoryGImageGray.wrap(source);
+			for (int y = strip.y0; y < strip.y1; y++) {
+				int indexDst = strip.offset(y);
+				for (int x = 0; x < source.width; x++) {
+					strip.data[indexDst++] = src.get(x,y).floatValue();
+				}
+			}
+		}
+	}
+
+	private void checkBinary() {
+		if( !binary )
+			throw new IllegalArgumentException("Operation requires a binary image. Threshold first.");
+	}
+
+	private GrayU8 checkShape( SimpleBinary imgB ) {
+		if( imgB.image.width != source.width || imgB.image.height != source.height )
+			throw new IllegalArgumentException("Image shapes do not match");
+		return imgB.image;
+	}
+
+	/**
+	 * Receives the final values for a row
+	 */
+	interface RowWriter {
+		void write( float[] values , int offset , int y );
+	}
+
+	/**
+	 * Contiguous set of rows. Rows y0 to y1-1 in the image are stored.
+	 */
+	static class Strip {
+		float[] data = new float[0];
+		int width;
+		int y0, y1;
+
+		void setRows( int width , int y0 , int y1 ) {
+			this.width = width;
+			this.y0 = y0;
+			this.y1 = y1;
+			int N = width*(y1-y0);
+			if( data.length < N )
+				data = new float[N];
+		}
+
+		int offset( int y ) {
+			return (y-y0)*width;
+		}
+	}
+
+	/**
+	 * Memory used by a single thread
+	 */
+	static class Workspace {
+		Strip stripA = new Strip();
+		Strip stripB = new Strip();
+		// results from the first pass of separable operations
+		Strip temp = new Strip();
+		float[] row = new float[0];
+
+		float[] row( int width ) {
+			if( row.length < width )
+				row = new float[width];
+			return row;
+		}
+	}
+
+	static abstract class Operation {
+		/**
+		 * Number of rows above and below which are needed to compute a row
+		 */
+		abstract int radius();
+	}
+
+	/**
+	 * Operation where each output pixel only depends on the same pixel in the input
+	 */
+	static abstract class PointOperation extends Operation {
+		@Override
+		int radius() { return 0; }
+
+		/**
+		 * Modifies the values in row 'y' in place
+		 */
+		abstract void process( float[] data , int offset , int width , int y );
+	}
+
+	/**
+	 * Operation which depends on a local region around each pixel
+	 */
+	static abstract class AreaOperation extends Operation {
+		/**
+		 * Computes all the rows in output from rows in input
+		 */
+		abstract void process( Strip input , Strip output , Workspace work , int imageHeight );
+	}
+
+	static class Threshold extends PointOperation {
+		float threshold;
+		boolean down;
+
+		Threshold(float threshold, boolean down) {
+			this.threshold = threshold;
+			this.down = down;
+		}
+
+		@Override
+		void process(float[] data, int offset, int width, int y) {
+			if( down ) {
+				for (int x = 0; x < width; x++, offset++) {
+					data[offset] = data[offset] <= threshold ? 1 : 0;
+				}
+			} else {
+				for (int x = 0; x < width; x++, offset++) {
+					data[offset] = data[offset] > threshold ? 1 : 0;
+				}
+			}
+		}
+	}
+
+	static class Logic extends PointOperation {
+		static final int AND=0,OR=1,XOR=2,INVERT=3;
+
+		GrayU8 other;
+		int type;
+
+		Logic(GrayU8 other, int type) {
+			this.other = other;
+			this.type = type;
+		}
+
+		@Override
+		void process(float[] data, int offset, int width, int y) {
+			if( type == INVERT ) {
+				for (int x = 0; x < width; x++, offset++) {
+					data[offset] = data[offset] != 0 ? 0 : 1;
+				}
+				return;
+			}
+			int indexB = other.startIndex + y*other.stride;
+			for (int x = 0; x < width; x++, offset++, indexB++) {
+				boolean a = data[offset] != 0;
+				boolean b = other.data[indexB] != 0;
+				boolean result;
+				switch( type ) {
+					case AND: result = a && b; break;
+					case OR: result = a || b; break;
+					default: result = a ^ b; break;
+				}
+				data[offset] = result ? 1 : 0;
+			}
+		}
+	}
+
+	/**
+	 * Mean filter which is normalized along the image border
+	 */
+	static class BlurMean extends AreaOperation {
+		int radius;
+
+		BlurMean(int radius) {
+			this.radius = radius;
+		}
+
+		@Override
+		int radius() { return radius; }
+
+		@Override
+		void process(Strip input, Strip output, Workspace work, int imageHeight) {
+			horizontalMean(input,work.temp,radius);
+			verticalMean(work.temp,output,work,radius,imageHeight);
+		}
+	}
+
+	/**
+	 * Gaussian filter which is normalized along the image border
+	 */
+	static class BlurGaussian extends AreaOperation {
+		Kernel1D_F32 kernel;
+
+		BlurGaussian(Kernel1D_F32 kernel) {
+			this.kernel = kernel;
+		}
+
+		@Override
+		int radius() { return kernel.getRadius(); }
+
+		@Override
+		void process(Strip input, Strip output, Workspace work, int imageHeight) {
+			final int width = input.width;
+			final int r = kernel.getRadius();
+			Strip temp = work.temp;
+			temp.setRows(width,input.y0,input.y1);
+
+			for (int y = input.y0; y < input.y1; y++) {
+				int indexIn = input.offset(y);
+				int indexOut = temp.offset(y);
+				for (int x = 0; x < width; x++) {
+					int x0 = Math.max(0,x-r), x1 = Math.min(width,x+r+1);
+					float sum = 0, weight = 0;
+					for (int i = x0; i < x1; i++) {
+						float k = kernel.data[i-x+r];
+						sum += k*input.data[indexIn+i];
+						weight += k;
+					}
+					temp.data[indexOut+x] = sum/weight;
+				}
+			}
+
+			float[] row = work.row(width);
+			for (int y = output.y0; y < output.y1; y++) {
+				int ya = Math.max(0,y-r), yb = Math.min(imageHeight,y+r+1);
+				float weight = 0;
+				Arrays.fill(row,0,width,0);
+				for (int i = ya; i < yb; i++) {
+					float k = kernel.data[i-y+r];
+					int index = temp.offset(i);
+					for (int x = 0; x < width; x++) {
+						row[x] += k*temp.data[index+x];
+					}
+					weight += k;
+				}
+				int indexOut = output.offset(y);
+				for (int x = 0; x < width; x++) {
+					output.data[indexOut+x] = row[x]/weight;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compares each pixel against the local mean
+	 *
+	 * @see boofcv.alg.filter.binary.GThresholdImageOps#localMean
+	 */
+	static class ThresholdMean extends AreaOperation {
+		int radius;
+		float scale;
+		boolean down;
+
+		ThresholdMean(int radius, float scale, boolean down) {
+			this.radius = radius;
+			this.scale = scale;
+			this.down = down;
+		}
+
+		@Override
+		int radius() { return radius; }
+
+		@Override
+		void process(Strip input, Strip output, Workspace work, int imageHeight) {
+			horizontalMean(input,work.temp,radius);
+			verticalMean(work.temp,output,work,radius,imageHeight);
+
+			for (int y = output.y0; y < output.y1; y++) {
+				int indexIn = input.offset(y);
+				int indexOut = output.offset(y);
+				for (int x = 0; x < output.width; x++, indexIn++, indexOut++) {
+					float mean = output.data[indexOut];
+					float value = input.data[indexIn];
+					if( down )
+						output.data[indexOut] = value <= mean*scale ? 1 : 0;
+					else
+						output.data[indexOut] = value*scale > mean ? 1 : 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Erosion or dilation with a square region.  Applying the 8-connect rule N times is the same as
+	 * a single pass with a square of radius N.  Only pixels inside the image are considered, so the image border
+	 * is not eroded, which is the same as BoofCV.
+	 */
+	static class Morph8 extends AreaOperation {
+		int radius;
+		boolean erode;
+
+		Morph8(int radius, boolean erode) {
+			this.radius = radius;
+			this.erode = erode;
+		}
+
+		@Override
+		int radius() { return radius; }
+
+		@Override
+		void process(Strip input, Strip output, Workspace work, int imageHeight) {
+			final int width = input.width;
+			final int r = radius;
+			Strip temp = work.temp;
+			temp.setRows(width,input.y0,input.y1);
+
+			for (int y = input.y0; y < input.y1; y++) {
+				int indexIn = input.offset(y);
+				int indexOut = temp.offset(y);
+				for (int x = 0; x < width; x++) {
+					temp.data[indexOut+x] = extreme(input.data,indexIn,x-r,x+r+1,1,width);
+				}
+			}
+
+			for (int y = output.y0; y < output.y1; y++) {
+				int indexOut = output.offset(y);
+				for (int x = 0; x < width; x++) {
+					output.data[indexOut+x] = extreme(temp.data,temp.offset(0)+x,y-r,y+r+1,width,imageHeight);
+				}
+			}
+		}
+
+		/**
+		 * Finds the min or max value along a line of values from i0 to i1-1.
+		 */
+		private float extreme( float[] data , int start , int i0 , int i1 , int step , int length ) {
+			i0 = Math.max(0,i0);
+			i1 = Math.min(length,i1);
+			if( erode ) {
+				for (int i = i0; i < i1; i++) {
+					if( data[start+i*step] == 0 )
+						return 0;
+				}
+				return 1;
+			} else {
+				for (int i = i0; i < i1; i++) {
+					if( data[start+i*step] != 0 )
+						return 1;
+				}
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * Mean along each row.  Normalized by the number of pixels inside the image.
+	 */
+	static void horizontalMean( Strip input , Strip output , int radius ) {
+		final int width = input.width;
+		output.setRows(width,input.y0,input.y1);
+
+		for (int y = input.y0; y < input.y1; y++) {
+			int indexIn = input.offset(y);
+			int indexOut = output.offset(y);
+
+			float sum = 0;
+			int count = 0;
+			for (int x = 0; x < radius && x < width; x++) {
+				sum += input.data[indexIn+x];
+				count++;
+			}
+			for (int x = 0; x < width; x++) {
+				if( x + radius < width ) {
+					sum += input.data[indexIn + x + radius];
+					count++;
+				}
+				if( x - radius - 1 >= 0 ) {
+					sum -= input.data[indexIn + x - radius - 1];
+					count--;
+				}
+				output.data[indexOut+x] = sum/count;
+			}
+		}
+	}
+
+	/**
+	 * Mean along each column for the rows in output.  Normalized by the number of pixels inside the image.
+	 */
+	static void verticalMean( Strip input , Strip output , Workspace work , int radius , int imageHeight ) {
+		final int width = input.width;
+		float[] row = work.row(width);
+
+		for (int y = output.y0; y < output.y1; y++) {
+			int ya = Math.max(0,y-radius), yb = Math.min(imageHeight,y+radius+1);
+			Arrays.fill(row,0,width,0);
+			for (int i = ya; i < yb; i++) {
+				int index = input.offset(i);
+				for (int x = 0; x < width; x++) {
+					row[x] += input.data[index+x];
+				}
+			}
+			float count = yb-ya;
+			int indexOut = output.offset(y);
+			for (int x = 0; x < width; x++) {
+				output.data[indexOut+x] = row[x]/count;
+			}
+		}
+	}
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright (c) 2011-2020, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.processing;
+
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.struct.ConnectRule;
+import boofcv.struct.image.GrayS32;
+import boofcv.struct.image.GrayU8;
+import boofcv.struct.image.ImageType;
+
+import java.util.Arrays;
+
+/**
+ * Binary image which is encoded as horizontal runs of pixels with a value of 1.  Ideal for sparse masks, e.g.
+ * motion detection, since after it has been created the cost of operations depends on the number of runs
+ * and not the number of pixels.  Supports logical operations and connected component labeling of the runs.
+ *
+ * Runs are sorted by row then by x.  The runs in row y are from index rowStart[y] to rowStart[y+1]-1.  Runs
+ * in the same row never touch each other.
+ *
+ * @author Peter Abeles
+ */
+public class SimpleRunLengthBinary {
+	int width, height;
+
+	// index of the first run in each row. Has height+1 elements
+	int[] rowStart = new int[1];
+	// first pixel in each run and the pixel after the last
+	int[] runX0 = new int[0];
+	int[] runX1 = new int[0];
+	int numRuns;
+
+	// label of each run, from 1 to numBlobs. Computed by label()
+	int[] runLabel = new int[0];
+	// number of pixels in each blob. Index 0 is blob 1
+	int[] blobArea = new int[0];
+	int numBlobs;
+
+	// union-find parent of each run
+	int[] parent = new int[0];
+
+	public SimpleRunLengthBinary() {
+	}
+
+	/**
+	 * Creates a run-length encoded copy of the binary image
+	 */
+	public SimpleRunLengthBinary( SimpleBinary image ) {
+		setTo(image);
+	}
+
+	/**
+	 * Encodes the binary image.  Any non-zero value is 1.
+	 */
+	public SimpleRunLengthBinary setTo( SimpleBinary image ) {
+		GrayU8 input = image.image;
+		reset(input.width,input.height);
+
+		// count the runs in each row so that the rows can then be filled in parallel
+		if( ConvertProcessing.isConcurrent(width,height) ) {
+			BoofConcurrency.loopBlocks(0,height,(y0,y1)->encode(input,false,y0,y1));
+		} else {
+			encode(input,false,0,height);
+		}
+		for (int y = 0; y < height; y++) {
+			rowStart[y+1] += rowStart[y];
+		}
+		numRuns = rowStart[height];
+		growRuns(numRuns);
+		if( ConvertProcessing.isConcurrent(width,height) ) {
+			BoofConcurrency.loopBlocks(0,height,(y0,y1)->encode(input,true,y0,y1));
+		} else {
+			encode(input,true,0,height);
+		}
+		return this;
+	}
+
+	/**
+	 * Finds the runs in each row.  If fill is false the number of runs are saved in rowStart[y+1], otherwise
+	 * the runs are saved starting at rowStart[y].
+	 */
+	void encode( GrayU8 input , boolean fill , int y0 , int y1 ) {
+		for (int y = y0; y < y1; y++) {
+			int index = input.startIndex + y*input.stride;
+			int run = fill ? rowStart[y] : 0;
+			int x = 0;
+			while( x < width ) {
+				// skip over the zeros
+				while( x < width && input.data[index+x] == 0 )
+					x++;
+				if( x == width )
+					break;
+				int start = x;
+				while( x < width && input.data[index+x] != 0 )
+					x++;
+				if( fill ) {
+					runX0[run] = start;
+					runX1[run] = x;
+				}
+				run++;
+			}
+			if( !fill )
+				rowStart[y+1] = run;
+		}
+	}
+
+	/**
+	 * Decodes into a binary image with one byte per pixel
+	 */
+	public SimpleBinary convert() {
+		return convert(new SimpleBinary(Boof.pool.newImage(ImageType.single(GrayU8.class),width,height)));
+	}
+
+	/**
+	 * Same as {@link #convert()} but writes into the provided output.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary convert( SimpleBinary output ) {
+		GrayU8 out = output.image;
+		out.reshape(width,height);
+		for (int y = 0; y < height; y++) {
+			int index = out.startIndex + y*out.stride;
+			Arrays.fill(out.data,index,index+width,(byte)0);
+			for (int run = rowStart[y]; run < rowStart[y+1]; run++) {
+				Arrays.fill(out.data,index+runX0[run],index+runX1[run],(byte)1);
+			}
+		}
+		return output;
+	}
+
+	public SimpleRunLengthBinary logicAnd( SimpleRunLengthBinary imgB ) {
+		return logicAnd(imgB, new SimpleRunLengthBinary());
+	}
+
+	/**
+	 * Same as {@link #logicAnd(SimpleRunLengthBinary)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results.
+	 * @return The output
+	 */
+	public SimpleRunLengthBinary logicAnd( SimpleRunLengthBinary imgB , SimpleRunLengthBinary output ) {
+		return logic(imgB,output,AND);
+	}
+
+	public SimpleRunLengthBinary logicOr( SimpleRunLengthBinary imgB ) {
+		return logicOr(imgB, new SimpleRunLengthBinary());
+	}
+
+	/**
+	 * Same as {@link #logicOr(SimpleRunLengthBinary)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results.
+	 * @return The output
+	 */
+	public SimpleRunLengthBinary logicOr( SimpleRunLengthBinary imgB , SimpleRunLengthBinary output ) {
+		return logic(imgB,output,OR);
+	}
+
+	public SimpleRunLengthBinary logicXor( SimpleRunLengthBinary imgB ) {
+		return logicXor(imgB, new SimpleRunLengthBinary());
+	}
+
+	/**
+	 * Same as {@link #logicXor(SimpleRunLengthBinary)} but writes into the provided output.
+	 *
+	 * @param output Storage for the results.
+	 * @return The output
+	 */
+	public SimpleRunLengthBinary logicXor( SimpleRunLengthBinary imgB , SimpleRunLengthBinary output ) {
+		return logic(imgB,output,XOR);
+	}
+
+	static final int AND = 0, OR = 1, XOR = 2;
+
+	/**
+	 * Sweeps across each row in both images at the same time and creates a new run whenever the output
+	 * changes value
+	 */
+	SimpleRunLengthBinary logic( SimpleRunLengthBinary imgB , SimpleRunLengthBinary output , int op ) {
+		if( imgB.width != width || imgB.height != height )
+			throw new IllegalArgumentException("Images must have the same shape");
+		if( output == this || output == imgB )
+			throw new IllegalArgumentException("Output can't be an input");
+		output.reset(width,height);
+
+		for (int y = 0; y < height; y++) {
+			// index of the next boundary in each image. Even is the start of a run and odd is the end
+			int i = rowStart[y]*2, endA = rowStart[y+1]*2;
+			int j = imgB.rowStart[y]*2, endB = imgB.rowStart[y+1]*2;
+
+			boolean inA = false, inB = false, current = false;
+			int start = 0;
+			while( i < endA || j < endB ) {
+				int xa = i < endA ? boundary(this,i) : Integer.MAX_VALUE;
+				int xb = j < endB ? boundary(imgB,j) : Integer.MAX_VALUE;
+				int x = Math.min(xa,xb);
+				if( xa == x ) { inA = !inA; i++; }
+				if( xb == x ) { inB = !inB; j++; }
+
+				boolean value;
+				switch( op ) {
+					case AND: value = inA && inB; break;
+					case OR: value = inA || inB; break;
+					default: value = inA != inB; break;
+				}
+				if( value != current ) {
+					if( value )
+						start = x;
+					else
+						output.addRun(start,x);
+					current = value;
+				}
+			}
+			output.rowStart[y+1] = output.numRuns;
+		}
+		return output;
+	}
+
+	static int boundary( SimpleRunLengthBinary image , int index ) {
+		return (index & 1) == 0 ? image.runX0[index/2] : image.runX1[index/2];
+	}
+
+	/**
+	 * Finds connected components by merging overlapping runs in adjacent rows.  Labels are assigned in the
+	 * order the first pixel of each blob is encountered, from 1 to the number of blobs.  When concurrency is
+	 * turned on, horizontal strips are labeled in parallel and then merged along the seams between them.
+	 *
+	 * @param rule Connectivity rule. 4 or 8
+	 * @return Number of blobs
+	 */
+	public int label( ConnectRule rule ) {
+		if( parent.length < numRuns ) {
+			parent = new int[numRuns];
+			runLabel = new int[numRuns];
+		}
+		for (int run = 0; run < numRuns; run++) {
+			parent[run] = run;
+		}
+
+		// with the 8-connect rule diagonal pixels touch
+		final int slack = rule == ConnectRule.EIGHT ? 1 : 0;
+
+		if( ConvertProcessing.isConcurrent(width,height) ) {
+			// label horizontal strips independently. Each strip only modifies the runs inside of it
+			final int numStrips = Math.min(height,BoofConcurrency.getMaxThreads());
+			BoofConcurrency.loopFor(0,numStrips,strip->{
+				int y0 = strip*height/numStrips;
+				int y1 = (strip+1)*height/numStrips;
+				mergeRows(y0+1,y1,slack);
+			});
+			// merge the labels along the seams between strips
+			for (int strip = 1; strip < numStrips; strip++) {
+				int y = strip*height/numStrips;
+				mergeRows(y,y+1,slack);
+			}
+		} else {
+			mergeRows(1,height,slack);
+		}
+
+		// assign labels in the order they are encountered
+		numBlobs = 0;
+		for (int run = 0; run < numRuns; run++) {
+			int root = find(run);
+			if( root == run ) {
+				runLabel[run] = ++numBlobs;
+			} else {
+				// the root always comes before the run since union makes the smaller index the root
+				runLabel[run] = runLabel[root];
+			}
+		}
+
+		if( blobArea.length < numBlobs )
+			blobArea = new int[numBlobs];
+		Arrays.fill(blobArea,0,numBlobs,0);
+		for (int run = 0; run < numRuns; run++) {
+			blobArea[runLabel[run]-1] += runX1[run] - runX0[run];
+		}
+
+		return numBlobs;
+	}
+
+	/**
+	 * Merges runs in row y with overlapping runs in row y-1 for each row from y0 to y1-1
+	 */
+	void mergeRows( int y0 , int y1 , int slack ) {
+		for (int y = Math.max(1,y0); y < y1; y++) {
+			int i = rowStart[y-1], endA = rowStart[y];
+			int j = rowStart[y], endB = rowStart[y+1];
+			while( i < endA && j < endB ) {
+				if( runX0[i] < runX1[j] + slack && runX0[j] < runX1[i] + slack ) {
+					union(i,j);
+				}
+				// advance whichever run ends first
+				if( runX1[i] < runX1[j] )
+					i++;
+				else
+					j++;
+			}
+		}
+	}
+
+	int find( int run ) {
+		while( parent[run] != run ) {
+			parent[run] = parent[parent[run]];
+			run = parent[run];
+		}
+		return run;
+	}
+
+	void union( int a , int b ) {
+		a = find(a);
+		b = find(b);
+		if( a < b )
+			parent[b] = a;
+		else if( b < a )
+			parent[a] = b;
+	}
+
+	/**
+	 * Renders the labels computed by {@link #label} into a labeled image.  Background pixels are 0.
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public GrayS32 labeled( GrayS32 output ) {
+		output.reshape(width,height);
+		if( ConvertProcessing.isConcurrent(width,height) ) {
+			BoofConcurrency.loopBlocks(0,height,(y0,y1)->labeled(output,y0,y1));
+		} else {
+			labeled(output,0,height);
+		}
+		return output;
+	}
+
+	void labeled( GrayS32 output , int y0 , int y1 ) {
+		for (int y = y0; y < y1; y++) {
+			int index = output.startIndex + y*output.stride;
+			Arrays.fill(output.data,index,index+width,0);
+			for (int run = rowStart[y]; run < rowStart[y+1]; run++) {
+				Arrays.fill(output.data,index+runX0[run],index+runX1[run],runLabel[run]);
+			}
+		}
+	}
+
+	/**
+	 * Removes all runs and changes the shape
+	 */
+	void reset( int width , int height ) {
+		this.width = width;
+		this.height = height;
+		if( rowStart.length < height+1 )
+			rowStart = new int[height+1];
+		Arrays.fill(rowStart,0,height+1,0);
+		numRuns = 0;
+		numBlobs = 0;
+	}
+
+	void addRun( int x0 , int x1 ) {
+		growRuns(numRuns+1);
+		runX0[numRuns] = x0;
+		runX1[numRuns] = x1;
+		numRuns++;
+	}
+
+	void growRuns( int length ) {
+		if( runX0.length >= length )
+			return;
+		int size = Math.max(length,runX0.length*2);
+		runX0 = Arrays.copyOf(runX0,size);
+		runX1 = Arrays.copyOf(runX1,size);
+	}
+
+	/**
+	 * Number of pixels with a value of 1
+	 */
+	public int countOnes() {
+		int total = 0;
+		for (int run = 0; run < numRuns; run++) {
+			total += runX1[run] - runX0[run];
+		}
+		return total;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getRunCount() {
+		return numRuns;
+	}
+
+	/**
+	 * Number of blobs found by the most recent call to {@link #label}
+	 */
+	public int getBlobCount() {
+		return numBlobs;
+	}
+
+	/**
+	 * Number of pixels in a blob
+	 *
+	 * @param label Label of the blob. 1 to the number of blobs.
+	 */
+	public int getBlobArea( int label ) {
+		return blobArea[label-1];
+	}
+
+	/**
+	 * Index of the first run in the row.  The runs in row y are rowStart(y) to rowStart(y+1)-1
+	 */
+	public int getRowStart( int y ) {
+		return rowStart[y];
+	}
+
+	public int getRunX0( int run ) {
+		return runX0[run];
+	}
+
+	public int getRunX1( int run ) {
+		return runX1[run];
+	}
+
+	public int getRunLabel( int run ) {
+		return runLabel[run];
+	}
+}
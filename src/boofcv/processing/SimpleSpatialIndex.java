@@ -0,0 +1,361 @@
+/*
+ * Copyright (c) 2011-2020, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.processing;
+
+import org.ddogleg.struct.GrowQueue_I32;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the bounding boxes of blobs or contours for quickly finding which ones are close to a point
+ * or overlap a rectangle.  Each grid cell stores the index of every bounding box which touches it.  Indexes
+ * match the order of the contours or blobs it was created from.
+ *
+ * All storage is recycled, so create one instance and call setTo() every frame.  Query results are written
+ * into the provided storage, or into internal storage which is overwritten by the next query.
+ *
+ * @author Peter Abeles
+ */
+public class SimpleSpatialIndex {
+	// bounding box of each item. Lower extent is inclusive and upper extent is exclusive
+	int[] bx0 = new int[0], by0 = new int[0], bx1 = new int[0], by1 = new int[0];
+	int size;
+
+	// If > 0 the size of a cell. Otherwise it's selected automatically
+	int requestedCellSize = 0;
+	int cellSize;
+	int cols, rows;
+
+	// items in cell i are cellItems[cellStart[i]] to cellItems[cellStart[i+1]-1]
+	int[] cellStart = new int[1];
+	int[] cellItems = new int[0];
+
+	// used to avoid returning the same item twice in a query
+	int[] marks = new int[0];
+	int query;
+
+	// storage for query results
+	GrowQueue_I32 found = new GrowQueue_I32();
+
+	/**
+	 * Indexes the bounding box of the external contour in each contour
+	 */
+	public SimpleSpatialIndex setTo( SimpleContourList contours ) {
+		int N = contours.size();
+		grow(N);
+		for (int i = 0; i < N; i++) {
+			SimpleContour c = contours.contour.get(i);
+			SimplePackedContours packed = c.packed;
+			int set = packed.externalSet(c.index);
+			int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = Integer.MIN_VALUE, y1 = Integer.MIN_VALUE;
+			for (int j = packed.setStart[set]; j < packed.setStart[set+1]; j++) {
+				int x = packed.points[2*j], y = packed.points[2*j+1];
+				x0 = Math.min(x0,x); x1 = Math.max(x1,x+1);
+				y0 = Math.min(y0,y); y1 = Math.max(y1,y+1);
+			}
+			bx0[i] = x0; by0[i] = y0; bx1[i] = x1; by1[i] = y1;
+		}
+		size = N;
+		build(contours.width,contours.height);
+		return this;
+	}
+
+	/**
+	 * Indexes the bounding box of each blob
+	 */
+	public SimpleSpatialIndex setTo( ResultsBlobStatistics blobs ) {
+		return setTo(blobs.x0,blobs.y0,blobs.x1,blobs.y1,blobs.size,blobs.runs.width,blobs.runs.height);
+	}
+
+	/**
+	 * Indexes arbitrary bounding boxes.  Lower extents are inclusive and upper extents are exclusive.
+	 *
+	 * @param size Number of bounding boxes
+	 * @param width Width of the image the boxes are inside of
+	 * @param height Height of the image the boxes are inside of
+	 */
+	public SimpleSpatialIndex setTo( int[] x0 , int[] y0 , int[] x1 , int[] y1 , int size , int width , int height ) {
+		grow(size);
+		System.arraycopy(x0,0,bx0,0,size);
+		System.arraycopy(y0,0,by0,0,size);
+		System.arraycopy(x1,0,bx1,0,size);
+		System.arraycopy(y1,0,by1,0,size);
+		this.size = size;
+		build(width,height);
+		return this;
+	}
+
+	void grow( int N ) {
+		if( bx0.length < N ) {
+			bx0 = new int[N]; by0 = new int[N];
+			bx1 = new int[N]; by1 = new int[N];
+			marks = new int[N];
+		}
+	}
+
+	/**
+	 * Adds every item to the cells it touches.  Counts the items in each cell first so that they can be saved
+	 * in a single array.
+	 */
+	void build( int width , int height ) {
+		if( requestedCellSize > 0 ) {
+			cellSize = requestedCellSize;
+		} else {
+			// aim for a couple of items in each cell
+			cellSize = Math.max(8,(int)Math.sqrt(2.0*width*height/Math.max(1,size)));
+		}
+		cols = Math.max(1,(width+cellSize-1)/cellSize);
+		rows = Math.max(1,(height+cellSize-1)/cellSize);
+
+		int numCells = cols*rows;
+		if( cellStart.length < numCells+1 )
+			cellStart = new int[numCells+1];
+		Arrays.fill(cellStart,0,numCells+1,0);
+
+		for (int i = 0; i < size; i++) {
+			int c0 = col(bx0[i]), c1 = col(bx1[i]-1);
+			int r0 = row(by0[i]), r1 = row(by1[i]-1);
+			for (int r = r0; r <= r1; r++) {
+				for (int c = c0; c <= c1; c++) {
+					cellStart[r*cols+c+1]++;
+				}
+			}
+		}
+		for (int i = 0; i < numCells; i++) {
+			cellStart[i+1] += cellStart[i];
+		}
+		if( cellItems.length < cellStart[numCells] )
+			cellItems = new int[cellStart[numCells]];
+
+		// cellStart is used as the insertion point then shifted back
+		for (int i = 0; i < size; i++) {
+			int c0 = col(bx0[i]), c1 = col(bx1[i]-1);
+			int r0 = row(by0[i]), r1 = row(by1[i]-1);
+			for (int r = r0; r <= r1; r++) {
+				for (int c = c0; c <= c1; c++) {
+					cellItems[cellStart[r*cols+c]++] = i;
+				}
+			}
+		}
+		for (int i = numCells; i > 0; i--) {
+			cellStart[i] = cellStart[i-1];
+		}
+		cellStart[0] = 0;
+
+		Arrays.fill(marks,0,size,0);
+		query = 0;
+	}
+
+	int col( double x ) {
+		return Math.max(0,Math.min(cols-1,(int)Math.floor(x/cellSize)));
+	}
+
+	int row( double y ) {
+		return Math.max(0,Math.min(rows-1,(int)Math.floor(y/cellSize)));
+	}
+
+	/**
+	 * Starts a new query. Items are only returned once per query
+	 */
+	void startQuery() {
+		query++;
+		if( query == Integer.MAX_VALUE ) {
+			Arrays.fill(marks,0,size,0);
+			query = 1;
+		}
+	}
+
+	/**
+	 * Finds all items whose bounding box overlaps the rectangle.  Lower extent is inclusive and upper extent is
+	 * exclusive.
+	 *
+	 * @param output Storage for the index of each item found
+	 * @return The output
+	 */
+	public GrowQueue_I32 overlap( int x0 , int y0 , int x1 , int y1 , GrowQueue_I32 output ) {
+		output.reset();
+		if( x1 <= x0 || y1 <= y0 )
+			return output;
+		startQuery();
+		for (int r = row(y0); r <= row(y1-1); r++) {
+			for (int c = col(x0); c <= col(x1-1); c++) {
+				int cell = r*cols+c;
+				for (int k = cellStart[cell]; k < cellStart[cell+1]; k++) {
+					int i = cellItems[k];
+					if( marks[i] == query )
+						continue;
+					marks[i] = query;
+					if( bx0[i] < x1 && x0 < bx1[i] && by0[i] < y1 && y0 < by1[i] )
+						output.add(i);
+				}
+			}
+		}
+		return output;
+	}
+
+	public GrowQueue_I32 overlap( int x0 , int y0 , int x1 , int y1 ) {
+		return overlap(x0,y0,x1,y1,found);
+	}
+
+	/**
+	 * Finds all items whose bounding box is entirely inside the rectangle.  Lower extent is inclusive and
+	 * upper extent is exclusive.
+	 *
+	 * @param output Storage for the index of each item found
+	 * @return The output
+	 */
+	public GrowQueue_I32 inside( int x0 , int y0 , int x1 , int y1 , GrowQueue_I32 output ) {
+		overlap(x0,y0,x1,y1,output);
+		int N = 0;
+		for (int k = 0; k < output.size; k++) {
+			int i = output.data[k];
+			if( bx0[i] >= x0 && bx1[i] <= x1 && by0[i] >= y0 && by1[i] <= y1 )
+				output.data[N++] = i;
+		}
+		output.size = N;
+		return output;
+	}
+
+	public GrowQueue_I32 inside( int x0 , int y0 , int x1 , int y1 ) {
+		return inside(x0,y0,x1,y1,found);
+	}
+
+	/**
+	 * Finds all items whose bounding box is within the specified distance of the point
+	 *
+	 * @param output Storage for the index of each item found
+	 * @return The output
+	 */
+	public GrowQueue_I32 radius( double x , double y , double radius , GrowQueue_I32 output ) {
+		output.reset();
+		startQuery();
+		for (int r = row(y-radius); r <= row(y+radius); r++) {
+			for (int c = col(x-radius); c <= col(x+radius); c++) {
+				int cell = r*cols+c;
+				for (int k = cellStart[cell]; k < cellStart[cell+1]; k++) {
+					int i = cellItems[k];
+					if( marks[i] == query )
+						continue;
+					marks[i] = query;
+					if( distanceSq(i,x,y) <= radius*radius )
+						output.add(i);
+				}
+			}
+		}
+		return output;
+	}
+
+	public GrowQueue_I32 radius( double x , double y , double radius ) {
+		return radius(x,y,radius,found);
+	}
+
+	/**
+	 * Finds the item with the bounding box closest to the point.  Distance is zero if the point is inside.
+	 *
+	 * @return Index of the closest item or -1 if there are no items
+	 */
+	public int nearest( double x , double y ) {
+		return nearest(x,y,Double.MAX_VALUE);
+	}
+
+	/**
+	 * Same as {@link #nearest(double, double)} but only items within the maximum distance are considered
+	 *
+	 * @return Index of the closest item or -1 if none are close enough
+	 */
+	public int nearest( double x , double y , double maxDistance ) {
+		if( size == 0 )
+			return -1;
+		startQuery();
+		final int cx = col(x), cy = row(y);
+		double bestDistanceSq = maxDistance == Double.MAX_VALUE ? Double.MAX_VALUE : maxDistance*maxDistance;
+		int best = -1;
+
+		// search rings of cells around the point until no unseen item can be closer
+		for (int ring = 0; ; ring++) {
+			int c0 = cx-ring, c1 = cx+ring, r0 = cy-ring, r1 = cy+ring;
+			for (int r = Math.max(0,r0); r <= Math.min(rows-1,r1); r++) {
+				boolean edgeRow = r == r0 || r == r1;
+				for (int c = Math.max(0,c0); c <= Math.min(cols-1,c1); c++) {
+					if( !edgeRow && c != c0 && c != c1 )
+						continue;
+					int cell = r*cols+c;
+					for (int k = cellStart[cell]; k < cellStart[cell+1]; k++) {
+						int i = cellItems[k];
+						if( marks[i] == query )
+							continue;
+						marks[i] = query;
+						double d = distanceSq(i,x,y);
+						// ties go to the lowest index so that the results don't depend on the grid
+						if( d < bestDistanceSq || (d == bestDistanceSq && (best == -1 || i < best)) ) {
+							bestDistanceSq = d;
+							best = i;
+						}
+					}
+				}
+			}
+
+			// Unseen items are outside the rings searched so far. Find the distance to the closest side of
+			// that region which isn't the border of the grid
+			double bound = Double.MAX_VALUE;
+			if( c0 > 0 ) bound = Math.min(bound, x - c0*cellSize);
+			if( c1 < cols-1 ) bound = Math.min(bound, (c1+1)*cellSize - x);
+			if( r0 > 0 ) bound = Math.min(bound, y - r0*cellSize);
+			if( r1 < rows-1 ) bound = Math.min(bound, (r1+1)*cellSize - y);
+			if( bound == Double.MAX_VALUE )
+				break;
+			if( bound >= 0 && bound*bound > bestDistanceSq )
+				break;
+		}
+		return best;
+	}
+
+	/**
+	 * Square of the distance from the point to the bounding box
+	 */
+	double distanceSq( int i , double x , double y ) {
+		double dx = Math.max(0,Math.max(bx0[i]-x, x-bx1[i]));
+		double dy = Math.max(0,Math.max(by0[i]-y, y-by1[i]));
+		return dx*dx + dy*dy;
+	}
+
+	/**
+	 * Number of items in the index
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getX0( int i ) { return bx0[i]; }
+	public int getY0( int i ) { return by0[i]; }
+	public int getX1( int i ) { return bx1[i]; }
+	public int getY1( int i ) { return by1[i]; }
+
+	public int getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Specifies the size of a grid cell in pixels. If &le; 0 then it's selected automatically from the number
+	 * of items.  Takes effect the next time setTo() is called.
+	 */
+	public void setCellSize( int cellSize ) {
+		this.requestedCellSize = cellSize;
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2011-2020, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.processing;
+
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.struct.image.GrayF32;
+import boofcv.struct.image.GrayU8;
+import boofcv.struct.image.ImageGray;
+import org.ddogleg.struct.FastQueue;
+
+import java.util.Arrays;
+
+/**
+ * Statistics of a gray scale image which are all computed in a single pass.  The same instance can be used to
+ * process a sequence of images without creating new memory.  When concurrency is turned on each thread
+ * computes statistics for a block of rows which are then combined.
+ *
+ * The histogram spans a fixed range of values, 0 to 256 by default, so that it can be computed in the same
+ * pass as everything else.  Values outside the range are added to the first or last bin.
+ *
+ * @author Peter Abeles
+ */
+public class SimpleStatistics {
+	// range of values covered by the histogram. lower is inclusive and upper exclusive
+	double histogramLower = 0, histogramUpper = 256;
+	int[] histogram;
+
+	double min, max;
+	double sum, sumSq;
+	int count;
+
+	// storage for each thread
+	FastQueue<Workspace> workspaces = new FastQueue<>(Workspace::new);
+
+	/**
+	 * Creates statistics with a 256 bin histogram, one bin for each value in a U8 image
+	 */
+	public SimpleStatistics() {
+		this(256);
+	}
+
+	/**
+	 * @param numBins Number of bins in the histogram
+	 */
+	public SimpleStatistics( int numBins ) {
+		if( numBins <= 0 )
+			throw new IllegalArgumentException("Number of bins must be positive");
+		histogram = new int[numBins];
+	}
+
+	/**
+	 * Specifies the range of values which the histogram spans
+	 *
+	 * @param lower Lower limit. Inclusive
+	 * @param upper Upper limit. Exclusive
+	 */
+	public void setHistogramRange( double lower , double upper ) {
+		if( upper <= lower )
+			throw new IllegalArgumentException("upper must be more than lower");
+		this.histogramLower = lower;
+		this.histogramUpper = upper;
+	}
+
+	/**
+	 * Computes statistics for the image
+	 *
+	 * @return this
+	 */
+	public SimpleStatistics process( SimpleGray image ) {
+		process((ImageGray)image.image);
+		return this;
+	}
+
+	void process( ImageGray image ) {
+		final int height = image.height;
+
+		if( ConvertProcessing.isConcurrent(image.width,height) ) {
+			BoofConcurrency.loopBlocks(0,height,workspaces,(work,y0,y1)->{
+				work.reset(histogram.length);
+				process(image,work,y0,y1);
+			});
+		} else {
+			workspaces.reset();
+			Workspace work = workspaces.grow();
+			work.reset(histogram.length);
+			process(image,work,0,height);
+		}
+
+		// combine the results from each thread
+		Arrays.fill(histogram,0);
+		min = Double.MAX_VALUE;
+		max = -Double.MAX_VALUE;
+		sum = sumSq = 0;
+		for (int i = 0; i < workspaces.size; i++) {
+			Workspace work = workspaces.get(i);
+			min = Math.min(min,work.min);
+			max = Math.max(max,work.max);
+			sum += work.sum;
+			sumSq += work.sumSq;
+			for (int bin = 0; bin < histogram.length; bin++) {
+				histogram[bin] += work.histogram[bin];
+			}
+		}
+		count = image.width*height;
+	}
+
+	void process( ImageGray image , Workspace work , int y0 , int y1 ) {
+		if( image instanceof GrayU8 ) {
+			processU8((GrayU8)image,work,y0,y1);
+		} else if( image instanceof GrayF32 ) {
+			processF32((GrayF32)image,work,y0,y1);
+		} else {
+			throw new RuntimeException("Unknown image type");
+		}
+	}
+
+	void processU8( GrayU8 image , Workspace work , int y0 , int y1 ) {
+		// histogram of pixel values which is then used to compute everything else
+		int[] values = work.values;
+		Arrays.fill(values,0);
+		for (int y = y0; y < y1; y++) {
+			int index = image.startIndex + y*image.stride;
+			int end = index + image.width;
+			while( index < end ) {
+				values[image.data[index++] & 0xFF]++;
+			}
+		}
+
+		int min = 256, max = -1;
+		long sum = 0, sumSq = 0;
+		for (int value = 0; value < 256; value++) {
+			int N = values[value];
+			if( N == 0 )
+				continue;
+			min = Math.min(min,value);
+			max = value;
+			sum += (long)N*value;
+			sumSq += (long)N*value*value;
+			work.histogram[bin(value)] += N;
+		}
+		if( max >= 0 ) {
+			work.min = min;
+			work.max = max;
+		}
+		work.sum = sum;
+		work.sumSq = sumSq;
+	}
+
+	void processF32( GrayF32 image , Workspace work , int y0 , int y1 ) {
+		float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+		double sum = 0, sumSq = 0;
+		for (int y = y0; y < y1; y++) {
+			int index = image.startIndex + y*image.stride;
+			int end = index + image.width;
+			while( index < end ) {
+				float value = image.data[index++];
+				if( value < min ) min = value;
+				if( value > max ) max = value;
+				sum += value;
+				sumSq += value*value;
+				work.histogram[bin(value)]++;
+			}
+		}
+		work.min = min;
+		work.max = max;
+		work.sum = sum;
+		work.sumSq = sumSq;
+	}
+
+	final int bin( double value ) {
+		int bin = (int)((value-histogramLower)*histogram.length/(histogramUpper-histogramLower));
+		if( bin < 0 )
+			return 0;
+		return bin >= histogram.length ? histogram.length-1 : bin;
+	}
+
+	/**
+	 * Returns the value which the specified fraction of pixels are less than or equal to. Computed from the
+	 * histogram, so the returned value is the lower edge of a bin.
+	 *
+	 * @param fraction Fraction of pixels, from 0 to 1. 0.5 is the median.
+	 */
+	public double percentile( double fraction ) {
+		if( fraction < 0 || fraction > 1 )
+			throw new IllegalArgumentException("fraction must be from 0 to 1");
+		int target = Math.max(1,(int)Math.ceil(fraction*count));
+		int total = 0;
+		for (int bin = 0; bin < histogram.length; bin++) {
+			total += histogram[bin];
+			if( total >= target ) {
+				return histogramLower + bin*(histogramUpper-histogramLower)/histogram.length;
+			}
+		}
+		return histogramUpper;
+	}
+
+	public double median() {
+		return percentile(0.5);
+	}
+
+	public double getMin() {
+		return min;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * Largest absolute value
+	 */
+	public double getMaxAbs() {
+		return Math.max(Math.abs(min),Math.abs(max));
+	}
+
+	public double getSum() {
+		return sum;
+	}
+
+	public double getMean() {
+		return count == 0 ? 0 : sum/count;
+	}
+
+	/**
+	 * Population variance of the pixel values
+	 */
+	public double getVariance() {
+		if( count == 0 )
+			return 0;
+		double mean = sum/count;
+		return Math.max(0,sumSq/count - mean*mean);
+	}
+
+	public double getStdev() {
+		return Math.sqrt(getVariance());
+	}
+
+	/**
+	 * Number of pixels in each bin of the histogram.  Don't modify.
+	 */
+	public int[] getHistogram() {
+		return histogram;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	static class Workspace {
+		int[] histogram = new int[0];
+		int[] values = new int[256];
+		double min, max;
+		double sum, sumSq;
+
+		void reset( int numBins ) {
+			if( histogram.length != numBins )
+				histogram = new int[numBins];
+			else
+				Arrays.fill(histogram,0);
+			min = Double.MAX_VALUE;
+			max = -Double.MAX_VALUE;
+			sum = sumSq = 0;
+		}
+	}
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2011-2020, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.processing;
+
+import boofcv.alg.filter.binary.GThresholdImageOps;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.factory.filter.binary.ThresholdType;
+import boofcv.struct.image.GrayF32;
+import boofcv.struct.image.GrayU8;
+import boofcv.struct.image.ImageGray;
+import boofcv.struct.image.ImageType;
+import org.ddogleg.struct.FastQueue;
+
+import java.util.Arrays;
+
+/**
+ * Thresholds an image using a threshold which is computed from the histogram of the entire image, e.g. Otsu.
+ * Designed to process a sequence of images.  The histogram is computed in parallel, with each thread
+ * filling in its own histogram which are then added together, and for large images it can be computed from
+ * a sparse grid of pixels. The binary image is then written in a second parallel pass.  Nothing is
+ * allocated after the first image.
+ *
+ * Pixel values are assumed to be from 0 to 255.
+ *
+ * @author Peter Abeles
+ */
+public class SimpleThresholdGlobal {
+	ThresholdType type;
+	boolean down;
+
+	// Only every N-th pixel along each axis is used to compute the histogram
+	int sampleStep = 1;
+
+	int[] histogram = new int[256];
+	// histogram for each thread
+	FastQueue<int[]> histograms = new FastQueue<>(()->new int[256]);
+
+	// the most recently computed threshold
+	double threshold;
+
+	/**
+	 * @param type Which global threshold. GLOBAL_OTSU, GLOBAL_ENTROPY, GLOBAL_LI, or GLOBAL_HUANG
+	 * @param down true for selecting pixels which are less than or equal to the threshold
+	 */
+	public SimpleThresholdGlobal( ThresholdType type , boolean down ) {
+		switch( type ) {
+			case GLOBAL_OTSU:
+			case GLOBAL_ENTROPY:
+			case GLOBAL_LI:
+			case GLOBAL_HUANG:
+				break;
+			default:
+				throw new IllegalArgumentException("Not a global threshold: "+type);
+		}
+		this.type = type;
+		this.down = down;
+	}
+
+	/**
+	 * Thresholds the image and returns a new binary image
+	 */
+	public SimpleBinary process( SimpleGray input ) {
+		return process(input,new SimpleBinary(Boof.pool.newImage(ImageType.single(GrayU8.class),input.image.width,input.image.height)));
+	}
+
+	/**
+	 * Thresholds the image and writes the results into the provided output
+	 *
+	 * @param output Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public SimpleBinary process( SimpleGray input , SimpleBinary output ) {
+		ImageGray image = (ImageGray)input.image;
+		output.image.reshape(image.width,image.height);
+
+		threshold = computeThreshold(image);
+
+		if( image instanceof GrayU8 ) {
+			GrayU8 in = (GrayU8)image;
+			// same as ThresholdImageOps, which converts the threshold into an int
+			int t = (int)threshold;
+			if( ConvertProcessing.isConcurrent(image.width,image.height) ) {
+				BoofConcurrency.loopBlocks(0,image.height,(y0,y1)->thresholdU8(in,t,output.image,y0,y1));
+			} else {
+				thresholdU8(in,t,output.image,0,image.height);
+			}
+		} else if( image instanceof GrayF32 ) {
+			GrayF32 in = (GrayF32)image;
+			float t = (float)threshold;
+			if( ConvertProcessing.isConcurrent(image.width,image.height) ) {
+				BoofConcurrency.loopBlocks(0,image.height,(y0,y1)->thresholdF32(in,t,output.image,y0,y1));
+			} else {
+				thresholdF32(in,t,output.image,0,image.height);
+			}
+		} else {
+			throw new RuntimeException("Unknown image type");
+		}
+		return output;
+	}
+
+	/**
+	 * Computes the histogram then selects the threshold from it
+	 */
+	double computeThreshold( ImageGray image ) {
+		// number of sampled rows
+		final int rows = (image.height + sampleStep - 1)/sampleStep;
+
+		if( ConvertProcessing.isConcurrent(image.width,image.height) ) {
+			BoofConcurrency.loopBlocks(0,rows,histograms,(hist,row0,row1)->{
+				Arrays.fill(hist,0);
+				histogram(image,hist,row0*sampleStep,Math.min(image.height,row1*sampleStep));
+			});
+		} else {
+			histograms.reset();
+			int[] hist = histograms.grow();
+			Arrays.fill(hist,0);
+			histogram(image,hist,0,image.height);
+		}
+
+		Arrays.fill(histogram,0);
+		for (int i = 0; i < histograms.size; i++) {
+			int[] hist = histograms.get(i);
+			for (int j = 0; j < 256; j++) {
+				histogram[j] += hist[j];
+			}
+		}
+
+		int total = 0;
+		for (int j = 0; j < 256; j++) {
+			total += histogram[j];
+		}
+
+		switch( type ) {
+			case GLOBAL_OTSU: return GThresholdImageOps.computeOtsu(histogram,256,total);
+			case GLOBAL_ENTROPY: return GThresholdImageOps.computeEntropy(histogram,256,total);
+			case GLOBAL_LI: return GThresholdImageOps.computeLi(histogram,256);
+			case GLOBAL_HUANG: return GThresholdImageOps.computeHuang(histogram,256);
+			default: throw new RuntimeException("BUG");
+		}
+	}
+
+	/**
+	 * Adds sampled pixels in rows y0 to y1-1 to the histogram.  y0 must be a multiple of the sample step.
+	 */
+	void histogram( ImageGray image , int[] hist , int y0 , int y1 ) {
+		final int step = sampleStep;
+		if( image instanceof GrayU8 ) {
+			GrayU8 in = (GrayU8)image;
+			for (int y = y0; y < y1; y += step) {
+				int index = in.startIndex + y*in.stride;
+				int end = index + in.width;
+				for (; index < end; index += step) {
+					hist[in.data[index] & 0xFF]++;
+				}
+			}
+		} else if( image instanceof GrayF32 ) {
+			GrayF32 in = (GrayF32)image;
+			for (int y = y0; y < y1; y += step) {
+				int index = in.startIndex + y*in.stride;
+				int end = index + in.width;
+				for (; index < end; index += step) {
+					int value = (int)in.data[index];
+					hist[value < 0 ? 0 : (value > 255 ? 255 : value)]++;
+				}
+			}
+		} else {
+			throw new RuntimeException("Unknown image type");
+		}
+	}
+
+	void thresholdU8( GrayU8 input , int threshold , GrayU8 output , int y0 , int y1 ) {
+		for (int y = y0; y < y1; y++) {
+			int indexIn = input.startIndex + y*input.stride;
+			int indexOut = output.startIndex + y*output.stride;
+			int end = indexIn + input.width;
+			if( down ) {
+				while( indexIn < end ) {
+					output.data[indexOut++] = (byte)((input.data[indexIn++] & 0xFF) <= threshold ? 1 : 0);
+				}
+			} else {
+				while( indexIn < end ) {
+					output.data[indexOut++] = (byte)((input.data[indexIn++] & 0xFF) > threshold ? 1 : 0);
+				}
+			}
+		}
+	}
+
+	void thresholdF32( GrayF32 input , float threshold , GrayU8 output , int y0 , int y1 ) {
+		for (int y = y0; y < y1; y++) {
+			int indexIn = input.startIndex + y*input.stride;
+			int indexOut = output.startIndex + y*output.stride;
+			int end = indexIn + input.width;
+			if( down ) {
+				while( indexIn < end ) {
+					output.data[indexOut++] = (byte)(input.data[indexIn++] <= threshold ? 1 : 0);
+				}
+			} else {
+				while( indexIn < end ) {
+					output.data[indexOut++] = (byte)(input.data[indexIn++] > threshold ? 1 : 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Threshold which was computed for the most recent image
+	 */
+	public double getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Histogram of the most recent image.  Don't modify.
+	 */
+	public int[] getHistogram() {
+		return histogram;
+	}
+
+	public int getSampleStep() {
+		return sampleStep;
+	}
+
+	/**
+	 * Only every N-th pixel along each axis is used to compute the histogram.  A value of 1 uses every pixel.
+	 * Larger values are much faster on large images and typically result in a similar threshold.
+	 */
+	public void setSampleStep( int sampleStep ) {
+		if( sampleStep <= 0 )
+			throw new IllegalArgumentException("sampleStep must be positive");
+		this.sampleStep = sampleStep;
+	}
+
+	public boolean isDown() {
+		return down;
+	}
+
+	public void setDown( boolean down ) {
+		this.down = down;
+	}
+
+	public ThresholdType getType() {
+		return type;
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2011-2020, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.processing;
+
+import boofcv.abst.tracker.PointTrack;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Saves the most recent locations of every active point track.  Each track is assigned a slot with a fixed
+ * capacity ring buffer of locations and frame IDs, all stored in primitive arrays.  When a track is no longer
+ * active its slot is recycled.  Tracks are looked up by ID using an open addressing hash table which is rebuilt
+ * from the active tracks every update.
+ *
+ * @author Peter Abeles
+ */
+public class SimpleTrackHistory {
+	// maximum number of locations saved for each track
+	int capacity;
+
+	// location of each entry. Slot s uses elements from 2*s*capacity to 2*(s+1)*capacity-1
+	double[] xy = new double[0];
+	// frame ID of each entry. Slot s uses elements from s*capacity to (s+1)*capacity-1
+	long[] frames = new long[0];
+	// index of the next entry which will be written in each slot
+	int[] head = new int[0];
+	// number of entries in each slot
+	int[] count = new int[0];
+	// value of updateCount when the slot was last used
+	int[] stamp = new int[0];
+	int numSlots = 0;
+
+	// slots which are not being used
+	int[] free = new int[0];
+	int numFree = 0;
+
+	// hash table from track ID to slot. Empty elements have a slot of -1
+	long[] tableIds = new long[0];
+	int[] tableSlots = new int[0];
+	// table from the previous update
+	long[] prevIds = new long[0];
+	int[] prevSlots = new int[0];
+
+	int updateCount = 0;
+
+	public SimpleTrackHistory( int capacity ) {
+		if( capacity <= 0 )
+			throw new IllegalArgumentException("Capacity must be more than zero");
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Adds the current location of every active track.  Tracks which already have an entry for this frame
+	 * are skipped and tracks which are no longer active are removed.
+	 *
+	 * @param active List of active tracks
+	 * @param frameID ID of the current frame
+	 */
+	public void update( List<PointTrack> active , long frameID ) {
+		updateCount++;
+		final int N = active.size();
+
+		// the old table is used to look up existing tracks while the new one is built
+		long[] tmpIds = prevIds; prevIds = tableIds; tableIds = tmpIds;
+		int[] tmpSlots = prevSlots; prevSlots = tableSlots; tableSlots = tmpSlots;
+
+		int tableSize = Integer.highestOneBit(Math.max(8,2*N-1))*2;
+		if( tableIds.length != tableSize ) {
+			tableIds = new long[tableSize];
+			tableSlots = new int[tableSize];
+		}
+		Arrays.fill(tableSlots,-1);
+
+		for (int i = 0; i < N; i++) {
+			PointTrack t = active.get(i);
+			int slot = lookup(prevIds,prevSlots,t.featureId);
+			if( slot < 0 )
+				slot = allocate();
+			stamp[slot] = updateCount;
+			insert(t.featureId,slot);
+
+			// don't add the same frame twice, e.g. when tracks are spawned after processing
+			int last = (head[slot]+capacity-1)%capacity;
+			if( count[slot] > 0 && frames[slot*capacity+last] == frameID )
+				continue;
+			int index = slot*capacity+head[slot];
+			xy[2*index] = t.pixel.x;
+			xy[2*index+1] = t.pixel.y;
+			frames[index] = frameID;
+			head[slot] = (head[slot]+1)%capacity;
+			count[slot] = Math.min(capacity,count[slot]+1);
+		}
+
+		// recycle slots of tracks which have been dropped
+		for (int i = 0; i < prevSlots.length; i++) {
+			int slot = prevSlots[i];
+			if( slot >= 0 && stamp[slot] != updateCount )
+				free[numFree++] = slot;
+		}
+	}
+
+	/**
+	 * Removes all tracks
+	 */
+	public void reset() {
+		numSlots = 0;
+		numFree = 0;
+		Arrays.fill(tableSlots,-1);
+		Arrays.fill(prevSlots,-1);
+	}
+
+	/**
+	 * Number of locations saved for the track.  Zero if the track is unknown.
+	 */
+	public int size( long trackID ) {
+		int slot = lookup(tableIds,tableSlots,trackID);
+		return slot < 0 ? 0 : count[slot];
+	}
+
+	/**
+	 * Copies the most recent locations of a track, ordered from oldest to newest.
+	 *
+	 * @param trackID ID of the track
+	 * @param maxPoints Maximum number of locations which are copied
+	 * @param xy Storage for the pixel coordinates. Location i is at xy[2*i], xy[2*i+1]
+	 * @param frames Storage for the frame ID of each location. Can be null.
+	 * @return Number of locations copied
+	 */
+	public int get( long trackID , int maxPoints , double[] xy , long[] frames ) {
+		int slot = lookup(tableIds,tableSlots,trackID);
+		if( slot < 0 )
+			return 0;
+		int K = Math.min(maxPoints,count[slot]);
+		if( xy.length < 2*K || (frames != null && frames.length < K) )
+			throw new IllegalArgumentException("Arrays are too small for "+K+" locations");
+
+		int index = (head[slot]+capacity-K)%capacity;
+		for (int i = 0; i < K; i++) {
+			int src = slot*capacity+index;
+			xy[2*i] = this.xy[2*src];
+			xy[2*i+1] = this.xy[2*src+1];
+			if( frames != null )
+				frames[i] = this.frames[src];
+			index = index+1 == capacity ? 0 : index+1;
+		}
+		return K;
+	}
+
+	int allocate() {
+		int slot;
+		if( numFree > 0 ) {
+			slot = free[--numFree];
+		} else {
+			if( numSlots == head.length )
+				grow(Math.max(16,numSlots*2));
+			slot = numSlots++;
+		}
+		head[slot] = 0;
+		count[slot] = 0;
+		return slot;
+	}
+
+	void grow( int slots ) {
+		xy = Arrays.copyOf(xy,2*slots*capacity);
+		frames = Arrays.copyOf(frames,slots*capacity);
+		head = Arrays.copyOf(head,slots);
+		count = Arrays.copyOf(count,slots);
+		stamp = Arrays.copyOf(stamp,slots);
+		free = Arrays.copyOf(free,slots);
+	}
+
+	void insert( long trackID , int slot ) {
+		int mask = tableIds.length-1;
+		int i = hash(trackID) & mask;
+		while( tableSlots[i] >= 0 ) {
+			i = (i+1) & mask;
+		}
+		tableIds[i] = trackID;
+		tableSlots[i] = slot;
+	}
+
+	static int lookup( long[] ids , int[] slots , long trackID ) {
+		if( ids.length == 0 )
+			return -1;
+		int mask = ids.length-1;
+		int i = hash(trackID) & mask;
+		while( slots[i] >= 0 ) {
+			if( ids[i] == trackID )
+				return slots[i];
+			i = (i+1) & mask;
+		}
+		return -1;
+	}
+
+	static int hash( long trackID ) {
+		long h = trackID*0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2011-2020, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.processing;
+
+import boofcv.abst.feature.detect.interest.ConfigPointDetector;
+import boofcv.abst.filter.derivative.ImageGradient;
+import boofcv.abst.tracker.PointTrack;
+import boofcv.abst.tracker.PointTrackerKltPyramid;
+import boofcv.alg.feature.detect.interest.GeneralFeatureDetector;
+import boofcv.alg.filter.derivative.GImageDerivativeOps;
+import boofcv.core.image.GeneralizedImageOps;
+import boofcv.factory.feature.detect.interest.FactoryDetectPoint;
+import boofcv.factory.filter.derivative.FactoryDerivative;
+import boofcv.struct.QueueCorner;
+import boofcv.struct.image.ImageGray;
+import georegression.struct.point.Point2D_I16;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Spawns new tracks only where they are needed and within a time limit.  The image is divided into a grid and
+ * features are only detected inside of cells which have fewer tracks than the target.  Cells are visited in
+ * round-robin order, starting where the previous call stopped, until the maximum number of new tracks has been
+ * spawned or the time budget would be exceeded.  The time it takes to process a cell is measured and used to
+ * predict if the next cell will fit inside the budget.
+ *
+ * @author Peter Abeles
+ */
+public class SimpleTrackSpawner {
+	// shape of the grid
+	int gridRows = 8, gridCols = 8;
+	// a cell with fewer tracks than this will have features detected inside of it
+	int targetPerCell = 8;
+	// maximum number of tracks spawned by a single call. &le; 0 for no limit
+	int maxSpawn = 0;
+	// maximum time in milliseconds for a single call. &le; 0 for no limit
+	double timeBudget = 0;
+
+	// detects features in a single cell
+	GeneralFeatureDetector detector;
+	ImageGradient gradient;
+	ImageGray sub, derivX, derivY;
+	// pixels around a cell which are included so that features next to the cell's border can be found
+	int margin;
+	// new tracks must be at least this far from existing tracks
+	int minSeparation;
+
+	// tracks sorted by cell. Tracks in cell i are from cellStart[i] to cellStart[i+1]-1
+	int[] cellStart = new int[0];
+	double[] cellXY = new double[0];
+	// tracks spawned by the current call
+	double[] spawnedXY = new double[0];
+	int numSpawned;
+	// cell where the next call will start
+	int nextCell = 0;
+	// average time to process a cell in nanoseconds
+	double cellTime = 0;
+
+	/**
+	 * @param config Configuration of the feature detector. If null the defaults are used.
+	 * @param imageType Type of image features are detected in
+	 */
+	public SimpleTrackSpawner( ConfigPointDetector config , Class imageType ) {
+		if( config == null )
+			config = new ConfigPointDetector();
+		Class derivType = GImageDerivativeOps.getDerivativeType(imageType);
+		detector = FactoryDetectPoint.create(config,imageType,derivType);
+		gradient = FactoryDerivative.sobel(imageType,derivType);
+		sub = GeneralizedImageOps.createSingleBand(imageType,1,1);
+		derivX = GeneralizedImageOps.createSingleBand(derivType,1,1);
+		derivY = GeneralizedImageOps.createSingleBand(derivType,1,1);
+		margin = config.general.radius+2;
+		minSeparation = Math.max(1,2*config.general.radius);
+	}
+
+	/**
+	 * Detects features in cells without enough tracks and spawns new tracks at their location
+	 *
+	 * @param tracker The tracker. The image must be the one it processed last.
+	 * @param image Most recent image processed by the tracker
+	 * @param active List of active tracks
+	 * @param timeBudget Maximum time in milliseconds. &le; 0 for no limit
+	 * @return Number of tracks spawned
+	 */
+	public int spawn( PointTrackerKltPyramid tracker , ImageGray image , List<PointTrack> active , double timeBudget ) {
+		final long startTime = System.nanoTime();
+		final long budget = timeBudget > 0 ? (long)(timeBudget*1e6) : Long.MAX_VALUE;
+		final int numCells = gridRows*gridCols;
+		final int limit = maxSpawn > 0 ? maxSpawn : Integer.MAX_VALUE;
+
+		sortByCell(image,active);
+		numSpawned = 0;
+		if( nextCell >= numCells )
+			nextCell = 0;
+
+		for (int i = 0; i < numCells; i++) {
+			int cell = (nextCell+i)%numCells;
+			int deficit = targetPerCell - (cellStart[cell+1]-cellStart[cell]);
+			if( deficit <= 0 )
+				continue;
+
+			long elapsed = System.nanoTime()-startTime;
+			if( elapsed + cellTime > budget ) {
+				// resume from this cell next time so that every cell gets a turn
+				nextCell = cell;
+				return numSpawned;
+			}
+
+			long before = System.nanoTime();
+			spawnInCell(tracker,image,cell,Math.min(deficit,limit-numSpawned));
+			long duration = System.nanoTime()-before;
+			cellTime = cellTime == 0 ? duration : 0.8*cellTime + 0.2*duration;
+
+			if( numSpawned >= limit ) {
+				// the next call starts with the cell after this one so that later cells aren't starved
+				nextCell = (cell+1)%numCells;
+				return numSpawned;
+			}
+		}
+		// every cell was visited
+		nextCell = 0;
+		return numSpawned;
+	}
+
+	void spawnInCell( PointTrackerKltPyramid tracker , ImageGray image , int cell , int count ) {
+		final int row = cell/gridCols, col = cell%gridCols;
+		final int cx0 = col*image.width/gridCols, cx1 = (col+1)*image.width/gridCols;
+		final int cy0 = row*image.height/gridRows, cy1 = (row+1)*image.height/gridRows;
+		final int x0 = Math.max(0,cx0-margin), y0 = Math.max(0,cy0-margin);
+		final int x1 = Math.min(image.width,cx1+margin), y1 = Math.min(image.height,cy1+margin);
+		if( cx1 <= cx0 || cy1 <= cy0 )
+			return;
+
+		image.subimage(x0,y0,x1,y1,sub);
+		derivX.reshape(sub.width,sub.height);
+		derivY.reshape(sub.width,sub.height);
+		gradient.process(sub,derivX,derivY);
+
+		// extra features are requested since some will be too close to existing tracks
+		detector.setMaxFeatures(3*count);
+		detector.process(sub,derivX,derivY,null,null,null);
+
+		QueueCorner found = detector.getMaximums();
+		int added = 0;
+		for (int i = 0; i < found.size && added < count; i++) {
+			Point2D_I16 p = found.get(i);
+			int x = p.x + x0, y = p.y + y0;
+			if( x < cx0 || x >= cx1 || y < cy0 || y >= cy1 )
+				continue;
+			if( isTooClose(image,x,y) )
+				continue;
+			if( tracker.addTrack(x,y) == null )
+				continue;
+			addSpawned(x,y);
+			added++;
+		}
+	}
+
+	/**
+	 * Checks to see if there's an existing track inside this cell or a neighbor which is too close
+	 */
+	boolean isTooClose( ImageGray image , double x , double y ) {
+		final double tol = minSeparation*minSeparation;
+		final int col = (int)(x*gridCols/image.width), row = (int)(y*gridRows/image.height);
+		for (int r = Math.max(0,row-1); r <= Math.min(gridRows-1,row+1); r++) {
+			for (int c = Math.max(0,col-1); c <= Math.min(gridCols-1,col+1); c++) {
+				int cell = r*gridCols+c;
+				for (int i = cellStart[cell]; i < cellStart[cell+1]; i++) {
+					double dx = cellXY[2*i]-x, dy = cellXY[2*i+1]-y;
+					if( dx*dx + dy*dy < tol )
+						return true;
+				}
+			}
+		}
+		for (int i = 0; i < numSpawned; i++) {
+			double dx = spawnedXY[2*i]-x, dy = spawnedXY[2*i+1]-y;
+			if( dx*dx + dy*dy < tol )
+				return true;
+		}
+		return false;
+	}
+
+	void addSpawned( double x , double y ) {
+		if( spawnedXY.length < 2*(numSpawned+1) )
+			spawnedXY = Arrays.copyOf(spawnedXY,Math.max(32,spawnedXY.length*2));
+		spawnedXY[2*numSpawned] = x;
+		spawnedXY[2*numSpawned+1] = y;
+		numSpawned++;
+	}
+
+	/**
+	 * Counting sort of track locations by the cell they are inside of
+	 */
+	void sortByCell( ImageGray image , List<PointTrack> active ) {
+		final int numCells = gridRows*gridCols;
+		final int N = active.size();
+		if( cellStart.length < numCells+1 )
+			cellStart = new int[numCells+1];
+		if( cellXY.length < 2*N )
+			cellXY = new double[2*N];
+		Arrays.fill(cellStart,0,numCells+1,0);
+
+		for (int i = 0; i < N; i++) {
+			cellStart[cellOf(image,active.get(i))+1]++;
+		}
+		for (int i = 0; i < numCells; i++) {
+			cellStart[i+1] += cellStart[i];
+		}
+		// cellStart is used as the insertion point then shifted back
+		for (int i = 0; i < N; i++) {
+			PointTrack t = active.get(i);
+			int index = cellStart[cellOf(image,t)]++;
+			cellXY[2*index] = t.pixel.x;
+			cellXY[2*index+1] = t.pixel.y;
+		}
+		for (int i = numCells; i > 0; i--) {
+			cellStart[i] = cellStart[i-1];
+		}
+		cellStart[0] = 0;
+	}
+
+	int cellOf( ImageGray image , PointTrack t ) {
+		int col = (int)(t.pixel.x*gridCols/image.width);
+		int row = (int)(t.pixel.y*gridRows/image.height);
+		col = Math.max(0,Math.min(gridCols-1,col));
+		row = Math.max(0,Math.min(gridRows-1,row));
+		return row*gridCols+col;
+	}
+
+	/**
+	 * Specifies the grid the image is divided into
+	 */
+	public SimpleTrackSpawner setGrid( int rows , int cols ) {
+		if( rows <= 0 || cols <= 0 )
+			throw new IllegalArgumentException("Grid must have at least one row and column");
+		this.gridRows = rows;
+		this.gridCols = cols;
+		this.nextCell = 0;
+		return this;
+	}
+
+	public int getGridRows() {
+		return gridRows;
+	}
+
+	public int getGridCols() {
+		return gridCols;
+	}
+
+	/**
+	 * Features are only detected inside of cells with fewer than this number of tracks
+	 */
+	public SimpleTrackSpawner setTargetPerCell( int targetPerCell ) {
+		this.targetPerCell = targetPerCell;
+		return this;
+	}
+
+	public int getTargetPerCell() {
+		return targetPerCell;
+	}
+
+	/**
+	 * Maximum number of tracks spawned in a single frame. &le; 0 for no limit
+	 */
+	public SimpleTrackSpawner setMaxSpawn( int maxSpawn ) {
+		this.maxSpawn = maxSpawn;
+		return this;
+	}
+
+	public int getMaxSpawn() {
+		return maxSpawn;
+	}
+
+	/**
+	 * Maximum time in milliseconds spent spawning tracks in a single frame. &le; 0 for no limit
+	 */
+	public SimpleTrackSpawner setTimeBudget( double milliseconds ) {
+		this.timeBudget = milliseconds;
+		return this;
+	}
+
+	public double getTimeBudget() {
+		return timeBudget;
+	}
+}
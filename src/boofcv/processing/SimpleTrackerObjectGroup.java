@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2011-2020, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.processing;
+
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.struct.image.ImageBase;
+import boofcv.struct.image.ImageType;
+import georegression.struct.shapes.Quadrilateral_F64;
+import processing.core.PImage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tracks multiple objects in the same video.  Each frame is converted once for every image type used by the
+ * trackers, instead of once per tracker, and then the trackers are updated in parallel.  The location of every
+ * object is saved in a single array.  Trackers can be of any kind created by Boof, e.g.
+ * {@link Boof#trackerTld} or {@link Boof#trackerCirculant}.
+ *
+ * @author Peter Abeles
+ */
+public class SimpleTrackerObjectGroup {
+	List<SimpleTrackerObject> trackers = new ArrayList<>();
+
+	// the most recent frame converted into every image type used by the trackers
+	List<ImageBase> images = new ArrayList<>();
+	// index of the image each tracker uses
+	int[] imageOf = new int[0];
+
+	// true if the tracker has been initialized and false if not or it has been dropped
+	boolean[] active = new boolean[0];
+	// true if the object was found in the most recent frame
+	boolean[] tracking = new boolean[0];
+	// corners of each object. Object i is from quads[8*i] to quads[8*i+7], in the order a, b, c, d.
+	double[] quads = new double[0];
+
+	// true if a frame has been processed
+	boolean hasFrame = false;
+
+	/**
+	 * Adds a tracker to the group.  It needs to be initialized before it will track anything.
+	 *
+	 * @return Index of the tracker
+	 */
+	public int add( SimpleTrackerObject tracker ) {
+		int index = trackers.size();
+		trackers.add(tracker);
+
+		ImageType type = tracker.tracker.getImageType();
+		int image = -1;
+		for (int i = 0; i < images.size(); i++) {
+			if( images.get(i).getImageType().isSameType(type) ) {
+				image = i;
+				break;
+			}
+		}
+		if( image < 0 ) {
+			image = images.size();
+			images.add(type.createImage(1,1));
+			// the new image type hasn't been converted yet
+			hasFrame = false;
+		}
+
+		int N = trackers.size();
+		if( imageOf.length < N ) {
+			int length = Math.max(N,2*imageOf.length);
+			imageOf = Arrays.copyOf(imageOf,length);
+			active = Arrays.copyOf(active,length);
+			tracking = Arrays.copyOf(tracking,length);
+			quads = Arrays.copyOf(quads,8*length);
+		}
+		imageOf[index] = image;
+		active[index] = false;
+		tracking[index] = false;
+		return index;
+	}
+
+	/**
+	 * Initializes a tracker using the provided image.  Only this tracker is affected.
+	 *
+	 * @return true if successful
+	 */
+	public boolean initialize( int which , PImage image , Quadrilateral_F64 location ) {
+		setFrame(image);
+		return initialize(which,location);
+	}
+
+	/**
+	 * Initializes a tracker using the image passed to {@link #setFrame} or {@link #process} most recently.
+	 *
+	 * @return true if successful
+	 */
+	public boolean initialize( int which , Quadrilateral_F64 location ) {
+		if( !hasFrame )
+			throw new RuntimeException("No frame. Call setFrame() or process() first");
+		SimpleTrackerObject t = trackers.get(which);
+		boolean success = t.tracker.initialize(images.get(imageOf[which]),location);
+		t.location.set(location);
+		active[which] = success;
+		tracking[which] = success;
+		saveQuad(which);
+		return success;
+	}
+
+	/**
+	 * Initializes the tracker by specifying the target using a rectangle
+	 */
+	public boolean initialize( int which , double x0 , double y0 , double x1 , double y1 ) {
+		Quadrilateral_F64 q = new Quadrilateral_F64();
+		q.a.set(x0, y0);
+		q.b.set(x1, y0);
+		q.c.set(x1, y1);
+		q.d.set(x0, y1);
+
+		return initialize(which,q);
+	}
+
+	/**
+	 * Converts the image into every image type used by the trackers without updating them.  Use this before
+	 * initializing several trackers with the same frame.
+	 */
+	public void setFrame( PImage image ) {
+		for (int i = 0; i < images.size(); i++) {
+			ImageBase b = images.get(i);
+			b.reshape(image.width,image.height);
+			ConvertProcessing.convertFromRGB(image,b);
+		}
+		hasFrame = true;
+	}
+
+	/**
+	 * Processes the next frame.  The frame is converted once for each image type and then every initialized
+	 * tracker is updated.  Trackers are updated in parallel if concurrency is turned on.
+	 *
+	 * @return Number of objects which were found
+	 */
+	public int process( PImage image ) {
+		setFrame(image);
+
+		final int N = trackers.size();
+		if( BoofConcurrency.USE_CONCURRENT && N > 1 ) {
+			BoofConcurrency.loopFor(0,N,this::update);
+		} else {
+			for (int i = 0; i < N; i++) {
+				update(i);
+			}
+		}
+
+		int total = 0;
+		for (int i = 0; i < N; i++) {
+			if( tracking[i] )
+				total++;
+		}
+		return total;
+	}
+
+	void update( int which ) {
+		if( !active[which] )
+			return;
+		SimpleTrackerObject t = trackers.get(which);
+		tracking[which] = t.tracker.process(images.get(imageOf[which]),t.location);
+		saveQuad(which);
+	}
+
+	void saveQuad( int which ) {
+		Quadrilateral_F64 q = trackers.get(which).location;
+		int i = 8*which;
+		quads[i  ] = q.a.x; quads[i+1] = q.a.y;
+		quads[i+2] = q.b.x; quads[i+3] = q.b.y;
+		quads[i+4] = q.c.x; quads[i+5] = q.c.y;
+		quads[i+6] = q.d.x; quads[i+7] = q.d.y;
+	}
+
+	/**
+	 * Stops updating a tracker until it's initialized again
+	 */
+	public void drop( int which ) {
+		active[which] = false;
+		tracking[which] = false;
+	}
+
+	/**
+	 * Number of trackers in the group
+	 */
+	public int size() {
+		return trackers.size();
+	}
+
+	public SimpleTrackerObject get( int which ) {
+		return trackers.get(which);
+	}
+
+	/**
+	 * True if the object was found in the most recent frame
+	 */
+	public boolean isTracking( int which ) {
+		return tracking[which];
+	}
+
+	/**
+	 * True if the tracker has been initialized and hasn't been dropped
+	 */
+	public boolean isActive( int which ) {
+		return active[which];
+	}
+
+	/**
+	 * Location of every object.  Object i's corners are from element 8*i to 8*i+7, in the order a, b, c, d
+	 * and x before y.  Only valid for objects which are being tracked.  The array can be longer than needed
+	 * and is modified by the next call to {@link #process}.
+	 */
+	public double[] getQuads() {
+		return quads;
+	}
+
+	/**
+	 * Copies the location of every object into the provided array
+	 *
+	 * @param output Storage for the corners. At least 8*size() elements.
+	 * @return The output
+	 */
+	public double[] getQuads( double[] output ) {
+		final int N = trackers.size();
+		if( output.length < 8*N )
+			throw new IllegalArgumentException("Output array too small for "+N+" objects");
+		System.arraycopy(quads,0,output,0,8*N);
+		return output;
+	}
+
+	/**
+	 * Location of an object as a quadrilateral
+	 */
+	public Quadrilateral_F64 getLocation( int which ) {
+		return trackers.get(which).location;
+	}
+}
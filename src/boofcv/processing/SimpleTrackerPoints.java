@@ -18,29 +18,72 @@
 
 package boofcv.processing;
 
+import boofcv.abst.feature.detect.interest.ConfigPointDetector;
 import boofcv.abst.tracker.PointTrack;
 import boofcv.abst.tracker.PointTracker;
+import boofcv.abst.tracker.PointTrackerKltPyramid;
 import boofcv.core.image.GeneralizedImageOps;
 import boofcv.struct.image.GrayF32;
 import boofcv.struct.image.GrayU8;
 import boofcv.struct.image.ImageGray;
 import georegression.struct.point.Point2D_F64;
+import org.ddogleg.sorting.QuickSort_F64;
 import processing.core.PImage;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Wrapper around {@link PointTracker} with a simplified interface.
  *
+ * In asynchronous mode the next frame is converted on a worker thread while the previous frame is being
+ * tracked.  Results lag the input by one frame, see {@link #setAsynchronous(boolean)}.
+ *
  * @author Peter Abeles
  */
 public class SimpleTrackerPoints {
 	PointTracker tracker;
 	List<PointTrack> list = new ArrayList<>();
 	Class imageType;
+	// most recent image which has been tracked. The tracker can still reference it
 	ImageGray gray;
 
+	// converted image which is waiting to be tracked
+	ImageGray next;
+	// image which the worker converts into. Not referenced by the tracker
+	ImageGray spare;
+	// true if next contains a frame which hasn't been tracked yet
+	boolean pending = false;
+	// thread used to convert images in asynchronous mode. null if not asynchronous
+	ExecutorService worker;
+
+	// ID and location of every track before the most recent frame was processed. Sorted by ID
+	long[] prevIds = new long[0];
+	double[] prevXY = new double[0];
+	int numPrev = 0;
+	// work space for sorting the previous tracks when they are out of order
+	QuickSort_F64 sorter = new QuickSort_F64();
+	double[] sortKeys = new double[0];
+	int[] sortIndexes = new int[0];
+	long[] sortIds = new long[0];
+	double[] sortXY = new double[0];
+
+	// recent locations of each track. null if the history isn't saved
+	SimpleTrackHistory history;
+
+	// configuration of the tracker's detector. Used to create the spawner
+	ConfigPointDetector configDetect;
+	// spawns tracks in a limited amount of time. Created when first used
+	SimpleTrackSpawner spawner;
+	// total time in milliseconds for each frame. Spawning uses what's left after processing
+	double frameBudget = 0;
+	// how long the most recent call to process took in nanoseconds
+	long processTime = 0;
+
 	public SimpleTrackerPoints(PointTracker tracker, Class imageType) {
 
 		this.tracker = tracker;
@@ -49,27 +92,193 @@ public class SimpleTrackerPoints {
 	}
 
 	public void process( PImage image) {
-		gray.reshape(image.width,image.height);
+		long startTime = System.nanoTime();
+		if( worker != null ) {
+			processAsynchronous(image);
+		} else {
+			convert(image,gray);
+			track(gray);
+		}
+		processTime = System.nanoTime()-startTime;
+	}
 
-		if( imageType == GrayF32.class ) {
-			ConvertProcessing.convert_RGB_F32(image,(GrayF32)gray);
-		} else if( imageType == GrayU8.class ) {
-			ConvertProcessing.convert_RGB_U8(image, (GrayU8) gray);
+	/**
+	 * Converts the new frame on the worker thread while the previously converted frame is tracked.  The image
+	 * has been fully read when this returns, so it can be modified.
+	 */
+	void processAsynchronous( PImage image ) {
+		if( !pending ) {
+			convert(image,next);
+			pending = true;
+			return;
+		}
+
+		Future<?> converting = worker.submit(()->convert(image,spare));
+		try {
+			track(next);
+		} finally {
+			waitFor(converting);
 		}
 
-		tracker.process(gray);
+		// the tracked image becomes the previous frame and the spare is the next one
+		ImageGray tmp = gray;
+		gray = next;
+		next = spare;
+		spare = tmp;
+		pending = true;
+	}
+
+	/**
+	 * In asynchronous mode this tracks the frame which is waiting to be processed.  Call after the last frame so
+	 * that its results are available.  Does nothing if there's no frame waiting.
+	 */
+	public void flush() {
+		if( !pending )
+			return;
+
+		track(next);
+		ImageGray tmp = gray;
+		gray = next;
+		next = tmp;
+		pending = false;
+	}
+
+	void track( ImageGray image ) {
+		savePrevious();
+		tracker.process(image);
 		list.clear();
 		tracker.getActiveTracks(list);
+		if( history != null )
+			history.update(list,tracker.getFrameID());
+	}
+
+	void convert( PImage image , ImageGray output ) {
+		output.reshape(image.width,image.height);
+
+		if( imageType == GrayF32.class ) {
+			ConvertProcessing.convert_RGB_F32(image,(GrayF32)output);
+		} else if( imageType == GrayU8.class ) {
+			ConvertProcessing.convert_RGB_U8(image, (GrayU8) output);
+		}
+	}
+
+	static void waitFor( Future<?> future ) {
+		try {
+			future.get();
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch( ExecutionException e ) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Turns asynchronous mode on or off.  When on, each call to {@link #process(PImage)} converts the new frame
+	 * on a worker thread while the frame passed in by the previous call is tracked.  The tracks then describe
+	 * the previous frame, which adds one frame of latency but the time per frame is close to the slower of
+	 * conversion and tracking, instead of their sum.  Call {@link #flush()} to track the final frame.
+	 *
+	 * Turning it off tracks any frame which is waiting.
+	 */
+	public void setAsynchronous( boolean asynchronous ) {
+		if( asynchronous == (worker != null) )
+			return;
+
+		if( asynchronous ) {
+			if( next == null ) {
+				next = GeneralizedImageOps.createSingleBand(imageType,1,1);
+				spare = GeneralizedImageOps.createSingleBand(imageType,1,1);
+			}
+			worker = Executors.newSingleThreadExecutor(r->{
+				Thread t = new Thread(r,"SimpleTrackerPoints");
+				t.setDaemon(true);
+				return t;
+			});
+		} else {
+			flush();
+			worker.shutdown();
+			worker = null;
+		}
+	}
+
+	public boolean isAsynchronous() {
+		return worker != null;
 	}
 
 	public void spawnTracks() {
 		tracker.spawnTracks();
 		list.clear();
 		tracker.getActiveTracks(list);
+		if( history != null )
+			history.update(list,tracker.getFrameID());
+	}
+
+	/**
+	 * Spawns new tracks in parts of the image which have lost tracks, without exceeding the limits on the number
+	 * of new tracks and time set in {@link #getSpawner()}.  If a frame budget has been set then the time left
+	 * after the most recent call to {@link #process(PImage)} is also a limit.  Trackers other than KLT
+	 * fall back to {@link #spawnTracks()}.
+	 *
+	 * @return Number of tracks spawned
+	 */
+	public int spawnTracksAdaptive() {
+		if( !(tracker instanceof PointTrackerKltPyramid) ) {
+			int before = list.size();
+			spawnTracks();
+			return Math.max(0,list.size()-before);
+		}
+
+		double budget = getSpawner().getTimeBudget();
+		if( frameBudget > 0 ) {
+			double remaining = frameBudget - processTime*1e-6;
+			if( remaining <= 0 )
+				return 0;
+			budget = budget > 0 ? Math.min(budget,remaining) : remaining;
+		}
+
+		int count = spawner.spawn((PointTrackerKltPyramid)tracker,gray,list,budget);
+		list.clear();
+		tracker.getActiveTracks(list);
+		if( history != null )
+			history.update(list,tracker.getFrameID());
+		return count;
+	}
+
+	/**
+	 * Settings for {@link #spawnTracksAdaptive()}
+	 */
+	public SimpleTrackSpawner getSpawner() {
+		if( spawner == null )
+			spawner = new SimpleTrackSpawner(configDetect,imageType);
+		return spawner;
+	}
+
+	/**
+	 * Total time in milliseconds for processing a frame and spawning tracks.  {@link #spawnTracksAdaptive()}
+	 * only uses the time left after {@link #process(PImage)}.  &le; 0 for no limit
+	 */
+	public void setFrameBudget( double milliseconds ) {
+		this.frameBudget = milliseconds;
+	}
+
+	public double getFrameBudget() {
+		return frameBudget;
+	}
+
+	/**
+	 * How long the most recent call to {@link #process(PImage)} took in milliseconds
+	 */
+	public double getProcessTime() {
+		return processTime*1e-6;
 	}
 
 	void reset() {
 		tracker.reset();
+		pending = false;
+		numPrev = 0;
+		if( history != null )
+			history.reset();
 	}
 
 	public int totalTracks() {
@@ -89,4 +298,171 @@ public class SimpleTrackerPoints {
 	public boolean dropTrack( int index ) {
 		return tracker.dropTrack(list.get(index));
 	}
+
+	/**
+	 * Copies every active track into the provided arrays in a single pass.  Track i is at xy[2*i], xy[2*i+1],
+	 * ids[i], and ages[i], which is the same order as the index used by {@link #getLocation(int)}.
+	 *
+	 * @param xy Storage for the pixel coordinates. At least 2*totalTracks() elements. Can be null.
+	 * @param ids Storage for the track IDs. At least totalTracks() elements. Can be null.
+	 * @param ages Storage for the track ages. At least totalTracks() elements. Can be null.
+	 * @return Number of tracks copied
+	 */
+	public int getTracks( double[] xy , long[] ids , int[] ages ) {
+		checkCapacity(xy,ids,ages);
+		final int N = list.size();
+		final long frameID = tracker.getFrameID();
+		for (int i = 0; i < N; i++) {
+			copyTrack(list.get(i),i,frameID,xy,ids,ages);
+		}
+		return N;
+	}
+
+	/**
+	 * Same as {@link #getTracks(double[], long[], int[])} but only copies tracks which have been spawned or
+	 * have moved since the previous frame.  Tracks are packed at the start of the arrays.
+	 *
+	 * @return Number of tracks copied
+	 */
+	public int getChangedTracks( double[] xy , long[] ids , int[] ages ) {
+		checkCapacity(xy,ids,ages);
+		final int N = list.size();
+		final long frameID = tracker.getFrameID();
+		int count = 0;
+		for (int i = 0; i < N; i++) {
+			PointTrack t = list.get(i);
+			int prev = findPrevious(t.featureId);
+			if( prev >= 0 && prevXY[2*prev] == t.pixel.x && prevXY[2*prev+1] == t.pixel.y )
+				continue;
+			copyTrack(t,count++,frameID,xy,ids,ages);
+		}
+		return count;
+	}
+
+	void checkCapacity( double[] xy , long[] ids , int[] ages ) {
+		final int N = list.size();
+		if( (xy != null && xy.length < 2*N) || (ids != null && ids.length < N) || (ages != null && ages.length < N) )
+			throw new IllegalArgumentException("Arrays are too small for "+N+" tracks");
+	}
+
+	static void copyTrack( PointTrack t , int i , long frameID , double[] xy , long[] ids , int[] ages ) {
+		if( xy != null ) {
+			xy[2*i] = t.pixel.x;
+			xy[2*i+1] = t.pixel.y;
+		}
+		if( ids != null )
+			ids[i] = t.featureId;
+		if( ages != null )
+			ages[i] = (int)(frameID-t.spawnFrameID);
+	}
+
+	/**
+	 * Saves the ID and location of every active track so that changes in the next frame can be found
+	 */
+	void savePrevious() {
+		numPrev = list.size();
+		if( prevIds.length < numPrev ) {
+			prevIds = new long[numPrev];
+			prevXY = new double[2*numPrev];
+		}
+		boolean sorted = true;
+		for (int i = 0; i < numPrev; i++) {
+			PointTrack t = list.get(i);
+			prevIds[i] = t.featureId;
+			prevXY[2*i] = t.pixel.x;
+			prevXY[2*i+1] = t.pixel.y;
+			if( i > 0 && prevIds[i-1] > prevIds[i] )
+				sorted = false;
+		}
+		// IDs are almost always in order already since new tracks are added to the end
+		if( !sorted )
+			sortPrevious();
+	}
+
+	void sortPrevious() {
+		if( sortKeys.length < numPrev ) {
+			sortKeys = new double[numPrev];
+			sortIndexes = new int[numPrev];
+			sortIds = new long[numPrev];
+			sortXY = new double[2*numPrev];
+		}
+		for (int i = 0; i < numPrev; i++) {
+			sortKeys[i] = prevIds[i];
+		}
+		sorter.sort(sortKeys,0,numPrev,sortIndexes);
+		for (int i = 0; i < numPrev; i++) {
+			int src = sortIndexes[i];
+			sortIds[i] = prevIds[src];
+			sortXY[2*i] = prevXY[2*src];
+			sortXY[2*i+1] = prevXY[2*src+1];
+		}
+		long[] tmpIds = prevIds; prevIds = sortIds; sortIds = tmpIds;
+		double[] tmpXY = prevXY; prevXY = sortXY; sortXY = tmpXY;
+	}
+
+	/**
+	 * Index of the track in the previous frame or -1 if it's new
+	 */
+	int findPrevious( long featureId ) {
+		int low = 0, high = numPrev-1;
+		while( low <= high ) {
+			int mid = (low+high) >>> 1;
+			long id = prevIds[mid];
+			if( id < featureId )
+				low = mid+1;
+			else if( id > featureId )
+				high = mid-1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * Turns on saving the most recent locations of every track.  Tracks which are dropped are removed from
+	 * the history automatically.
+	 *
+	 * @param capacity Maximum number of locations saved for each track. If 0 the history is turned off.
+	 */
+	public void setHistoryCapacity( int capacity ) {
+		if( capacity <= 0 ) {
+			history = null;
+		} else if( history == null || history.getCapacity() != capacity ) {
+			history = new SimpleTrackHistory(capacity);
+			history.update(list,tracker.getFrameID());
+		}
+	}
+
+	public int getHistoryCapacity() {
+		return history == null ? 0 : history.getCapacity();
+	}
+
+	/**
+	 * Copies the most recent locations of an active track, ordered from oldest to newest.  Nothing is
+	 * allocated.  The history must be turned on with {@link #setHistoryCapacity(int)}.
+	 *
+	 * @param index Index of the active track
+	 * @param maxPoints Maximum number of locations which are copied
+	 * @param xy Storage for the pixel coordinates. Location i is at xy[2*i], xy[2*i+1]
+	 * @param frames Storage for the frame ID of each location. Can be null.
+	 * @return Number of locations copied
+	 */
+	public int getHistory( int index , int maxPoints , double[] xy , long[] frames ) {
+		if( history == null )
+			throw new RuntimeException("History is turned off. See setHistoryCapacity()");
+		return history.get(list.get(index).featureId,maxPoints,xy,frames);
+	}
+
+	/**
+	 * Number of locations saved for an active track
+	 */
+	public int getHistorySize( int index ) {
+		if( history == null )
+			return 0;
+		return history.size(list.get(index).featureId);
+	}
+
+	public SimpleTrackHistory getHistory() {
+		return history;
+	}
 }
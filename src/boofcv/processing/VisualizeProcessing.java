@@ -19,41 +19,101 @@
 package boofcv.processing;
 
 import boofcv.alg.misc.ImageStatistics;
+import boofcv.concurrency.BoofConcurrency;
 import boofcv.struct.flow.ImageFlow;
 import boofcv.struct.image.GrayF32;
 import boofcv.struct.image.GrayI;
 import boofcv.struct.image.GrayS16;
 import boofcv.struct.image.GrayS32;
-import processing.core.PConstants;
 import processing.core.PImage;
 
+import java.util.Arrays;
 import java.util.Random;
 
 /**
- * Functions for visualizing BoofCV data for Processing
+ * Functions for visualizing BoofCV data for Processing.  Every function has a variant which renders into an
+ * existing PImage so that nothing is allocated when called every frame.  When concurrency is turned on, rows
+ * are rendered in parallel.
  *
  * @author Peter Abeles
  */
 public class VisualizeProcessing {
 
+	// colors for labeled images. Only grows and existing elements are never modified. Read without a lock,
+	// so it must be volatile for other threads to see the filled in table
+	private static volatile int[] labelColors = new int[0];
+	private static final Random labelRand = new Random(123);
+
+	// color of each angle in dense flow, in degrees
+	private static final int[] tableSine = new int[360];
+	private static final int[] tableCosine = new int[360];
+
+	static {
+		for( int i = 0; i < 360; i++ ) {
+			double angle = i*Math.PI/180.0;
+			tableSine[i] = (int)(255*(Math.sin(angle)+1)/2);
+			tableCosine[i] = (int)(255*(Math.cos(angle)+1)/2);
+		}
+	}
+
 	/**
 	 * Visualizes a labeled image.  Each label is assigned a random color
 	 * @param image Labeled input image
 	 * @return Rendered color output image
 	 */
 	public static PImage labeled( GrayS32 image ) {
+		return labeled(image, Boof.pool.newPImage(image.width,image.height));
+	}
 
-		int numRegions = ImageStatistics.max(image)+1;
-
-		int colors[] = new int[numRegions];
+	/**
+	 * Same as {@link #labeled(GrayS32)} but writes into the provided output.  Colors are cached between calls
+	 * and the image is only searched for the largest label when a label without a color is encountered.
+	 *
+	 * @param out Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public static PImage labeled( GrayS32 image , PImage out ) {
+		int[] colors = labelColors;
+		if( !labeledUnchecked(image,colors,out) ) {
+			colors = labelColors(ImageStatistics.max(image)+1);
+			labeled(image,colors,out);
+		}
+		return out;
+	}
 
-		Random rand = new Random(123);
-		for( int i = 0; i < colors.length; i++ ) {
-			colors[i] = rand.nextInt() | 0xFF000000;
+	/**
+	 * Returns a color table with at least the requested number of colors.  The color of a label never changes
+	 * since it's always generated from the same random sequence.
+	 */
+	static synchronized int[] labelColors( int numRegions ) {
+		if( labelColors.length < numRegions ) {
+			int[] colors = Arrays.copyOf(labelColors,numRegions);
+			for( int i = labelColors.length; i < numRegions; i++ ) {
+				colors[i] = labelRand.nextInt() | 0xFF000000;
+			}
+			colors[0]= 0xFF000000;
+			labelColors = colors;
 		}
-		colors[0]= 0xFF000000;
+		return labelColors;
+	}
 
-		return labeled(image, colors);
+	/**
+	 * Renders using the color table without checking to see if every label has a color first.
+	 *
+	 * @return true if every label had a color
+	 */
+	static boolean labeledUnchecked( GrayS32 image , int[] colors , PImage out ) {
+		ConvertProcessing.reshape(out,image.width,image.height);
+		boolean[] success = new boolean[]{true};
+		if( ConvertProcessing.isConcurrent(image.width,image.height) ) {
+			BoofConcurrency.loopBlocks(0,image.height,(y0,y1)->{
+				if( !labeled(image,colors,out,y0,y1) )
+					success[0] = false;
+			});
+		} else {
+			success[0] = labeled(image,colors,out,0,image.height);
+		}
+		return success[0];
 	}
 
 	/**
@@ -65,12 +125,31 @@ public class VisualizeProcessing {
 	 * @return Visualized image.
 	 */
 	public static PImage colorizeSign(GrayF32 src, float maxAbsValue) {
-		PImage out = new PImage(src.width, src.height, PConstants.RGB);
+		return colorizeSign(src, maxAbsValue, Boof.pool.newPImage(src.width,src.height));
+	}
 
-		int indexOut = 0;
-		for (int y = 0; y < src.height; y++) {
-			for (int x = 0; x < src.width; x++, indexOut++ ) {
-				float v = src.get(x, y);
+	/**
+	 * Same as {@link #colorizeSign(GrayF32, float)} but writes into the provided output.
+	 *
+	 * @param out Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public static PImage colorizeSign(GrayF32 src, float maxAbsValue, PImage out) {
+		ConvertProcessing.reshape(out,src.width,src.height);
+		if( ConvertProcessing.isConcurrent(src.width,src.height) ) {
+			BoofConcurrency.loopBlocks(0,src.height,(y0,y1)->colorizeSign(src,maxAbsValue,out,y0,y1));
+		} else {
+			colorizeSign(src,maxAbsValue,out,0,src.height);
+		}
+		return out;
+	}
+
+	static void colorizeSign(GrayF32 src, float maxAbsValue, PImage out, int y0, int y1) {
+		for (int y = y0; y < y1; y++) {
+			int indexSrc = src.startIndex + y*src.stride;
+			int indexOut = y*src.width;
+			for (int x = 0; x < src.width; x++, indexSrc++, indexOut++ ) {
+				float v = src.data[indexSrc];
 
 				int rgb;
 				if (v > 0) {
@@ -81,8 +160,6 @@ public class VisualizeProcessing {
 				out.pixels[indexOut] = rgb;
 			}
 		}
-
-		return out;
 	}
 
 	/**
@@ -94,12 +171,30 @@ public class VisualizeProcessing {
 	 * @return Visualized image.
 	 */
 	public static PImage colorizeSign(GrayI src, int maxAbsValue) {
-		PImage out = new PImage(src.width, src.height, PConstants.RGB);
+		return colorizeSign(src, maxAbsValue, Boof.pool.newPImage(src.width,src.height));
+	}
 
-		int indexOut = 0;
-		for (int y = 0; y < src.height; y++) {
+	/**
+	 * Same as {@link #colorizeSign(GrayI, int)} but writes into the provided output.
+	 *
+	 * @param out Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public static PImage colorizeSign(GrayI src, int maxAbsValue, PImage out) {
+		ConvertProcessing.reshape(out,src.width,src.height);
+		if( ConvertProcessing.isConcurrent(src.width,src.height) ) {
+			BoofConcurrency.loopBlocks(0,src.height,(y0,y1)->colorizeSign(src,maxAbsValue,out,y0,y1));
+		} else {
+			colorizeSign(src,maxAbsValue,out,0,src.height);
+		}
+		return out;
+	}
+
+	static void colorizeSign(GrayI src, int maxAbsValue, PImage out, int y0, int y1) {
+		for (int y = y0; y < y1; y++) {
+			int indexOut = y*src.width;
 			for (int x = 0; x < src.width; x++, indexOut++ ) {
-				int v = src.get(x, y);
+				int v = src.unsafe_get(x, y);
 
 				int rgb;
 				if (v > 0) {
@@ -110,8 +205,6 @@ public class VisualizeProcessing {
 				out.pixels[indexOut] = rgb;
 			}
 		}
-
-		return out;
 	}
 
 	/**
@@ -122,17 +215,40 @@ public class VisualizeProcessing {
 	 * @return Visualized image
 	 */
 	public static PImage labeled(GrayS32 image, int[] colors) {
-		PImage out = new PImage(image.width, image.height, PConstants.RGB);
+		return labeled(image, colors, Boof.pool.newPImage(image.width,image.height));
+	}
 
-		int indexOut = 0;
-		for (int y = 0; y < image.height; y++) {
+	/**
+	 * Same as {@link #labeled(GrayS32, int[])} but writes into the provided output.
+	 *
+	 * @param out Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public static PImage labeled(GrayS32 image, int[] colors, PImage out) {
+		if( !labeledUnchecked(image,colors,out) )
+			throw new IllegalArgumentException("Label with no color");
+		return out;
+	}
+
+	/**
+	 * @return false if a label didn't have a color
+	 */
+	static boolean labeled(GrayS32 image, int[] colors, PImage out, int y0, int y1) {
+		final int numColors = colors.length;
+		boolean success = true;
+		for (int y = y0; y < y1; y++) {
 			int indexImage = image.startIndex + image.stride*y;
+			int indexOut = y*image.width;
 			for (int x = 0; x < image.width; x++,indexImage++,indexOut++) {
-				out.pixels[indexOut] = colors[image.data[indexImage]];
+				int label = image.data[indexImage];
+				if( label < numColors ) {
+					out.pixels[indexOut] = colors[label];
+				} else {
+					success = false;
+				}
 			}
 		}
-
-		return out;
+		return success;
 	}
 
 	/**
@@ -143,17 +259,39 @@ public class VisualizeProcessing {
 	 * @return Visualized image
 	 */
 	public static PImage gradient(GrayF32 dx, GrayF32 dy) {
-		PImage out = new PImage(dx.width, dx.height, PConstants.RGB);
+		return gradient(dx, dy, Boof.pool.newPImage(dx.width,dx.height));
+	}
+
+	/**
+	 * Same as {@link #gradient(GrayF32, GrayF32)} but writes into the provided output.
+	 *
+	 * @param out Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public static PImage gradient(GrayF32 dx, GrayF32 dy, PImage out) {
+		ConvertProcessing.reshape(out,dx.width,dx.height);
 
 		float maxAbsValue = ImageStatistics.maxAbs(dx);
 		maxAbsValue = Math.max(maxAbsValue, ImageStatistics.maxAbs(dy));
-		if( maxAbsValue == 0 )
+		if( maxAbsValue == 0 ) {
+			Arrays.fill(out.pixels,0,dx.width*dx.height,0);
 			return out;
+		}
 
-		int indexOut = 0;
-		for (int y = 0; y < dx.height; y++) {
+		final float max = maxAbsValue;
+		if( ConvertProcessing.isConcurrent(dx.width,dx.height) ) {
+			BoofConcurrency.loopBlocks(0,dx.height,(y0,y1)->gradient(dx,dy,max,out,y0,y1));
+		} else {
+			gradient(dx,dy,max,out,0,dx.height);
+		}
+		return out;
+	}
+
+	static void gradient(GrayF32 dx, GrayF32 dy, float maxAbsValue, PImage out, int y0, int y1) {
+		for (int y = y0; y < y1; y++) {
 			int indexX = dx.startIndex + dx.stride*y;
 			int indexY = dy.startIndex + dy.stride*y;
+			int indexOut = y*dx.width;
 
 			for (int x = 0; x < dy.width; x++,indexX++,indexY++,indexOut++) {
 
@@ -180,8 +318,6 @@ public class VisualizeProcessing {
 				out.pixels[indexOut] = 0xFF << 24 | r << 16 | g << 8 | b;
 			}
 		}
-
-		return out;
 	}
 
 	/**
@@ -192,17 +328,39 @@ public class VisualizeProcessing {
 	 * @return Visualized image
 	 */
 	public static PImage gradient(GrayS16 dx, GrayS16 dy) {
-		PImage out = new PImage(dx.width, dx.height, PConstants.RGB);
+		return gradient(dx, dy, Boof.pool.newPImage(dx.width,dx.height));
+	}
+
+	/**
+	 * Same as {@link #gradient(GrayS16, GrayS16)} but writes into the provided output.
+	 *
+	 * @param out Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public static PImage gradient(GrayS16 dx, GrayS16 dy, PImage out) {
+		ConvertProcessing.reshape(out,dx.width,dx.height);
 
 		int maxAbsValue = ImageStatistics.maxAbs(dx);
 		maxAbsValue = Math.max(maxAbsValue, ImageStatistics.maxAbs(dy));
-		if( maxAbsValue == 0 )
+		if( maxAbsValue == 0 ) {
+			Arrays.fill(out.pixels,0,dx.width*dx.height,0);
 			return out;
+		}
+
+		final int max = maxAbsValue;
+		if( ConvertProcessing.isConcurrent(dx.width,dx.height) ) {
+			BoofConcurrency.loopBlocks(0,dx.height,(y0,y1)->gradient(dx,dy,max,out,y0,y1));
+		} else {
+			gradient(dx,dy,max,out,0,dx.height);
+		}
+		return out;
+	}
 
-		int indexOut = 0;
-		for (int y = 0; y < dx.height; y++) {
+	static void gradient(GrayS16 dx, GrayS16 dy, int maxAbsValue, PImage out, int y0, int y1) {
+		for (int y = y0; y < y1; y++) {
 			int indexX = dx.startIndex + dx.stride*y;
 			int indexY = dy.startIndex + dy.stride*y;
+			int indexOut = y*dx.width;
 
 			for (int x = 0; x < dy.width; x++,indexX++,indexY++,indexOut++) {
 
@@ -229,11 +387,19 @@ public class VisualizeProcessing {
 				out.pixels[indexOut] = 0xFF << 24 | r << 16 | g << 8 | b;
 			}
 		}
-
-		return out;
 	}
 
 	public static PImage denseFlow(ImageFlow flowImage ) {
+		return denseFlow(flowImage, Boof.pool.newPImage(flowImage.width,flowImage.height));
+	}
+
+	/**
+	 * Same as {@link #denseFlow(ImageFlow)} but writes into the provided output.
+	 *
+	 * @param out Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public static PImage denseFlow(ImageFlow flowImage , PImage out ) {
 
 		float maxValue = 0;
 		int N = flowImage.width*flowImage.height;
@@ -244,25 +410,31 @@ public class VisualizeProcessing {
 			if( v > maxValue )
 				maxValue = v;
 		}
-		return denseFlow(flowImage,maxValue);
+		return denseFlow(flowImage,maxValue,out);
 	}
 
 	public static PImage denseFlow(ImageFlow flowImage , float maxValue ) {
+		return denseFlow(flowImage, maxValue, Boof.pool.newPImage(flowImage.width,flowImage.height));
+	}
 
-		PImage out = new PImage(flowImage.width,flowImage.height, PConstants.RGB);
-
-		int tableSine[] = new int[360];
-		int tableCosine[] = new int[360];
-
-		for( int i = 0; i < 360; i++ ) {
-			double angle = i*Math.PI/180.0;
-			tableSine[i] = (int)(255*(Math.sin(angle)+1)/2);
-			tableCosine[i] = (int)(255*(Math.cos(angle)+1)/2);
+	/**
+	 * Same as {@link #denseFlow(ImageFlow, float)} but writes into the provided output.
+	 *
+	 * @param out Storage for the results. Reshaped if needed.
+	 * @return The output
+	 */
+	public static PImage denseFlow(ImageFlow flowImage , float maxValue , PImage out ) {
+		ConvertProcessing.reshape(out,flowImage.width,flowImage.height);
+		if( ConvertProcessing.isConcurrent(flowImage.width,flowImage.height) ) {
+			BoofConcurrency.loopBlocks(0,flowImage.height,(y0,y1)->denseFlow(flowImage,maxValue,out,y0,y1));
+		} else {
+			denseFlow(flowImage,maxValue,out,0,flowImage.height);
 		}
+		return out;
+	}
 
-		int N = flowImage.width*flowImage.height;
-
-		for (int i = 0; i < N; i++) {
+	static void denseFlow(ImageFlow flowImage , float maxValue , PImage out , int y0 , int y1 ) {
+		for (int i = y0*flowImage.width; i < y1*flowImage.width; i++) {
 			ImageFlow.D f = flowImage.data[i];
 
 			if( !f.isValid() ) {
@@ -272,7 +444,7 @@ public class VisualizeProcessing {
 
 				if( m > 1 )m = 1;
 
-				double angle = Math.atan2(f.y,f.x);
+				double angle = atan2(f.y,f.x);
 				int degree = (int)(180+angle*179.999/Math.PI);
 				int r = (int)(m*tableSine[degree]);
 				int g = (int)(m*tableCosine[degree]);
@@ -280,7 +452,25 @@ public class VisualizeProcessing {
 				out.pixels[i] = 0xFF << 24 | r << 16 | g << 8;
 			}
 		}
+	}
 
-		return out;
+	/**
+	 * Polynomial approximation of atan2 with a maximum error of about 2e-6 radians, which is much smaller than the
+	 * one degree resolution of the color table.
+	 */
+	static double atan2( double y , double x ) {
+		double ax = Math.abs(x), ay = Math.abs(y);
+		if( ax == 0 && ay == 0 )
+			return 0;
+		boolean swap = ay > ax;
+		double z = swap ? ax/ay : ay/ax;
+		double z2 = z*z;
+		double a = z*(0.99997726 + z2*(-0.33262347 + z2*(0.19354346 + z2*(-0.11643287 +
+				z2*(0.05265332 + z2*(-0.01172120))))));
+		if( swap )
+			a = Math.PI/2.0 - a;
+		if( x < 0 )
+			a = Math.PI - a;
+		return y < 0 ? -a : a;
 	}
 }